@@ -12,6 +12,14 @@ application {
 group = "fr.rader"
 version = "1.0.2"
 
+sourceSets {
+    // tools that run against the app, they aren't part of the shipped jar
+    create("benchmark") {
+        compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+        runtimeClasspath += output + compileClasspath + sourceSets.main.get().runtimeClasspath
+    }
+}
+
 java {
     sourceCompatibility = JavaVersion.VERSION_1_8
     targetCompatibility = JavaVersion.VERSION_1_8
@@ -28,6 +36,24 @@ dependencies {
     implementation("org.apache-extras.beanshell:bsh:2.0b6")
 
     implementation("org.eclipse.jgit:org.eclipse.jgit:6.4.0.202211300538-r")
+
+    testImplementation("junit:junit:4.13.2")
+}
+
+tasks.register<JavaExec>("runHeadless") {
+    group = "application"
+    description = "Edits replays from the command line, the arguments are given with --args"
+
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("fr.rader.imbob.HeadlessMain")
+}
+
+tasks.register<JavaExec>("benchmark") {
+    group = "verification"
+    description = "Compares the compiled PSL scripts with BeanShell on the packets of a replay"
+
+    classpath = sourceSets["benchmark"].runtimeClasspath
+    mainClass.set("fr.rader.imbob.psl.PSLBenchmark")
 }
 
 tasks.withType<Jar> {
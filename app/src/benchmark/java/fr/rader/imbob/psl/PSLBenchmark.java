@@ -0,0 +1,189 @@
+package fr.rader.imbob.psl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import fr.rader.imbob.packets.Packet;
+import fr.rader.imbob.packets.PacketMetaData;
+import fr.rader.imbob.packets.Packets;
+import fr.rader.imbob.protocol.Protocol;
+import fr.rader.imbob.replay.RecordingUtils;
+import fr.rader.imbob.replay.ReplayMetaData;
+import fr.rader.imbob.types.VarInt;
+import fr.rader.imbob.utils.data.DataReader;
+import fr.rader.imbob.utils.data.DataWriter;
+import fr.rader.imbob.utils.zip.ZipReader;
+
+/**
+ * Compares the compiled PSL scripts with BeanShell on the packets of a real replay.<br>
+ * Every packet that has both a read and a write script is read then written back,
+ * once with {@link PSLCompiler} and once with {@link PSLInterpreter}.<br>
+ * It lives in the benchmark source set so it isn't shipped in the jar, run it with
+ * {@code gradle benchmark --args="<replay.mcpr> [iterations] [max packets]"}
+ */
+public class PSLBenchmark {
+
+    private static final int DEFAULT_ITERATIONS = 10;
+    private static final int DEFAULT_MAX_PACKETS = 100000;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.out.println("Usage: PSLBenchmark <replay.mcpr> [iterations] [max packets]");
+            return;
+        }
+
+        File replay = new File(args[0]);
+        int iterations = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+        int maxPackets = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_MAX_PACKETS;
+
+        List<SamplePacket> samples = readSamples(replay, maxPackets);
+
+        // we only keep the packets both paths can handle, so they do the same work
+        List<SamplePacket> compiledSamples = new ArrayList<>();
+        for (SamplePacket sample : samples) {
+            if (PSLCompiler.getCodec(sample.readPath) != null && PSLCompiler.getCodec(sample.writePath) != null) {
+                compiledSamples.add(sample);
+            }
+        }
+
+        System.out.println("Packets with PSL scripts: " + samples.size());
+        System.out.println("Packets with compiled PSL scripts: " + compiledSamples.size());
+        if (compiledSamples.isEmpty()) {
+            return;
+        }
+
+        PSLInterpreter interpreter = new PSLInterpreter();
+
+        // the first run of each path isn't measured, it parses and loads the scripts
+        runInterpreter(interpreter, compiledSamples);
+        runCompiled(compiledSamples);
+
+        long interpreterTime = 0;
+        long compiledTime = 0;
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            runInterpreter(interpreter, compiledSamples);
+            interpreterTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            runCompiled(compiledSamples);
+            compiledTime += System.nanoTime() - start;
+        }
+
+        long packetCount = (long) compiledSamples.size() * iterations;
+        System.out.println("BeanShell: " + (interpreterTime / 1000000) + " ms, " + (interpreterTime / packetCount) + " ns/packet");
+        System.out.println("Compiled:  " + (compiledTime / 1000000) + " ms, " + (compiledTime / packetCount) + " ns/packet");
+        System.out.println("Speedup:   " + String.format("%.1fx", (double) interpreterTime / compiledTime));
+    }
+
+    private static void runInterpreter(PSLInterpreter interpreter, List<SamplePacket> samples) throws Exception {
+        for (SamplePacket sample : samples) {
+            Packet packet = sample.createPacket();
+
+            interpreter.set("reader", new DataReader(sample.body));
+            interpreter.set("packet", packet);
+            interpreter.execute(sample.readPath);
+
+            try (DataWriter writer = new DataWriter()) {
+                interpreter.set("writer", writer);
+                interpreter.execute(sample.writePath);
+            }
+        }
+    }
+
+    private static void runCompiled(List<SamplePacket> samples) throws Exception {
+        for (SamplePacket sample : samples) {
+            Packet packet = sample.createPacket();
+
+            PSLCompiler.getCodec(sample.readPath).execute(new DataReader(sample.body), null, packet);
+
+            try (DataWriter writer = new DataWriter()) {
+                PSLCompiler.getCodec(sample.writePath).execute(null, writer, packet);
+            }
+        }
+    }
+
+    /**
+     * Read the packets that have PSL scripts from the replay's recording
+     */
+    private static List<SamplePacket> readSamples(File replay, int maxPackets) throws IOException {
+        List<SamplePacket> samples = new ArrayList<>();
+
+        try (ZipReader zipReader = new ZipReader(replay)) {
+            ReplayMetaData metaData = ReplayMetaData.from(zipReader.getEntryAsStream("metaData.json"));
+            Protocol protocol = metaData.getProtocol();
+            if (protocol == null) {
+                throw new IOException(replay.getName() + " uses an unsupported protocol");
+            }
+
+            DataReader reader = new DataReader(zipReader.getEntryAsStream("recording.tmcpr"));
+
+            // the login packets are never given to the tasks, so they aren't measured either
+            RecordingUtils.copyLoginRecords(reader, null, protocol);
+
+            boolean isConfiguration = protocol.getFeatures().hasConfigurationState();
+            int finishConfigurationPacketId = isConfiguration
+                    ? Packets.get("finish_configuration").getConfigurationPacketId(protocol)
+                    : -1;
+
+            while (reader.hasNext() && samples.size() < maxPackets) {
+                reader.readInt();
+                int packetSize = reader.readInt();
+                int packetId = reader.readVarIntRaw();
+                int bodySize = packetSize - reader.getLastVarIntSize();
+
+                PacketMetaData packetMetaData = Packets.get(protocol, packetId, isConfiguration);
+                if (packetMetaData == null) {
+                    reader.skip(bodySize);
+                } else {
+                    String readPath = Packets.getPSLReadPath(protocol, packetId, isConfiguration);
+                    String writePath = Packets.getPSLWritePath(protocol, packetId, isConfiguration);
+
+                    byte[] body = new byte[bodySize];
+                    reader.readFully(body, 0, bodySize);
+                    if (new File(readPath).isFile() && new File(writePath).isFile()) {
+                        samples.add(new SamplePacket(protocol, packetId, isConfiguration, packetMetaData.getName(), readPath, writePath, body));
+                    }
+                }
+
+                if (isConfiguration && packetId == finishConfigurationPacketId) {
+                    isConfiguration = false;
+                }
+            }
+        }
+
+        return samples;
+    }
+
+    private static class SamplePacket {
+
+        private final Protocol protocol;
+        private final int packetId;
+        private final boolean isConfiguration;
+        private final String name;
+
+        private final String readPath;
+        private final String writePath;
+
+        private final byte[] body;
+
+        private SamplePacket(Protocol protocol, int packetId, boolean isConfiguration, String name, String readPath, String writePath, byte[] body) {
+            this.protocol = protocol;
+            this.packetId = packetId;
+            this.isConfiguration = isConfiguration;
+            this.name = name;
+            this.readPath = readPath;
+            this.writePath = writePath;
+            this.body = body;
+        }
+
+        private Packet createPacket() {
+            Packet packet = new Packet(this.protocol, new VarInt(this.packetId), this.isConfiguration);
+            packet.setPacketName(this.name);
+
+            return packet;
+        }
+    }
+}
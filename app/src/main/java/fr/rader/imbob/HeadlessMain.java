@@ -0,0 +1,357 @@
+package fr.rader.imbob;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+import fr.rader.imbob.tasks.AbstractTask;
+import fr.rader.imbob.tasks.ProgressListener;
+import fr.rader.imbob.tasks.TaskExecutor;
+import fr.rader.imbob.tasks.impl.SkinChangerTask;
+import fr.rader.imbob.tasks.impl.TimeChangerTask;
+import fr.rader.imbob.tasks.impl.UsernameChangerTask;
+import fr.rader.imbob.tasks.impl.WeatherChangerTask;
+import fr.rader.imbob.updater.PSLUpdater;
+import fr.rader.imbob.utils.OS;
+import fr.rader.imbob.utils.io.FileUtils;
+import fr.rader.imbob.utils.json.JsonUtils;
+import fr.rader.imbob.utils.zip.CompressionPolicy;
+
+/**
+ * Edits replays from the command line, without the user interface.<br>
+ * The tasks are read from a JSON file, with one optional object per task:
+ * <pre>
+ * {
+ *     "time": { "time_of_day": 18000 },
+ *     "weather": { "weather": "Thunder" },
+ *     "username": { "target": "Rader", "new_username": "Bob" },
+ *     "skin": { "target": "Rader", "skin_player": "Notch" }
+ * }
+ * </pre>
+ * The edited replays are written to the output folder with their original name.
+ * The original replays are only read, unless the output folder is the folder they're in.
+ * The exit status is 0 if all the replays were edited, 1 if some couldn't be edited
+ * or the PSL scripts couldn't be downloaded, and 2 for invalid arguments.<br>
+ * The jar's main class is the user interface, so this one is started by name:
+ * <pre>
+ * java -cp ImBob-&lt;version&gt;.jar fr.rader.imbob.HeadlessMain --tasks tasks.json --output out replays/*.mcpr
+ * </pre>
+ * or from the sources with {@code gradle runHeadless --args="..."}, where the paths are relative to the app folder.
+ */
+public class HeadlessMain {
+
+    private static final int EXIT_SUCCESS = 0;
+    private static final int EXIT_FAILURE = 1;
+    private static final int EXIT_USAGE = 2;
+
+    private static final String USAGE = String.join("\n",
+            "Usage: HeadlessMain [options] --tasks <tasks.json> --output <folder> <replay or glob>...",
+            "",
+            "Options:",
+            "  --tasks <file>      The JSON file describing the tasks to apply",
+            "  --output <folder>   The folder the edited replays are written to",
+            "  --threads <count>   The maximum number of replays edited at the same time",
+            "  --compression <c>   How the edited recordings are compressed: a level from 0 to 9,",
+            "                      store, or original to compress them like the original replays (default)",
+            "  --offline           Don't update the PSL scripts before editing",
+            "",
+            "These options turn off optimizations, to compare them or to work around a problem:",
+            "  --no-pipeline               Decompress, edit and compress each recording on a single thread",
+            "  --no-compiled-scripts       Run every PSL script with BeanShell",
+            "  --no-lazy-decoding          Decode the whole packets the tasks accept",
+            "  --no-raw-copy               Compress the entries other than the recording again",
+            "  --no-parallel-compression   Compress each recording on a single thread",
+            "  --no-dry-run                Find out if the tasks change a replay while rewriting it, not before",
+            "",
+            "Globs are matched from the working directory, like replays/*.mcpr or replays/**.mcpr.",
+            "A folder means every .mcpr file in it."
+    );
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    private static int run(String[] args) {
+        String tasksPath = null;
+        String outputPath = null;
+        int threads = -1;
+        CompressionPolicy compression = CompressionPolicy.MATCH_ORIGINAL;
+        boolean offline = false;
+        boolean pipelined = true;
+        boolean compiledCodecs = true;
+        boolean lazyDecoding = true;
+        boolean rawEntryCopy = true;
+        boolean parallelCompression = true;
+        boolean dryRun = true;
+        List<String> globs = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--tasks":
+                    tasksPath = (i + 1 < args.length) ? args[++i] : null;
+                    break;
+
+                case "--output":
+                    outputPath = (i + 1 < args.length) ? args[++i] : null;
+                    break;
+
+                case "--threads":
+                    try {
+                        threads = (i + 1 < args.length) ? Integer.parseInt(args[++i]) : -1;
+                    } catch (NumberFormatException e) {
+                        return usage("Invalid thread count: " + args[i]);
+                    }
+
+                    if (threads < 1) {
+                        return usage("--threads needs a positive count");
+                    }
+                    break;
+
+                case "--compression":
+                    if (i + 1 >= args.length) {
+                        return usage("--compression needs a value");
+                    }
+
+                    try {
+                        compression = CompressionPolicy.parse(args[++i]);
+                    } catch (IllegalArgumentException e) {
+                        return usage(e.getMessage());
+                    }
+                    break;
+
+                case "--offline":
+                    offline = true;
+                    break;
+
+                case "--no-pipeline":
+                    pipelined = false;
+                    break;
+
+                case "--no-compiled-scripts":
+                    compiledCodecs = false;
+                    break;
+
+                case "--no-lazy-decoding":
+                    lazyDecoding = false;
+                    break;
+
+                case "--no-raw-copy":
+                    rawEntryCopy = false;
+                    break;
+
+                case "--no-parallel-compression":
+                    parallelCompression = false;
+                    break;
+
+                case "--no-dry-run":
+                    dryRun = false;
+                    break;
+
+                case "--help":
+                case "-h":
+                    System.out.println(USAGE);
+                    return EXIT_SUCCESS;
+
+                default:
+                    if (args[i].startsWith("--")) {
+                        return usage("Unknown option: " + args[i]);
+                    }
+
+                    globs.add(args[i]);
+                    break;
+            }
+        }
+
+        if (tasksPath == null || outputPath == null || globs.isEmpty()) {
+            return usage("The tasks file, the output folder and at least one replay are required");
+        }
+
+        if (!new File(tasksPath).isFile()) {
+            return usage("Cannot find the tasks file " + tasksPath);
+        }
+
+        File outputFolder = new File(outputPath);
+        if (!outputFolder.isDirectory() && !outputFolder.mkdirs()) {
+            System.err.println("Cannot create the output folder " + outputFolder);
+            return EXIT_FAILURE;
+        }
+
+        List<File> replays = new ArrayList<>();
+        try {
+            for (String glob : globs) {
+                List<File> files = FileUtils.findFiles(glob);
+                if (files.isEmpty()) {
+                    System.err.println("No replay matches " + glob);
+                }
+
+                replays.addAll(files);
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot list the replays: " + e.getMessage());
+            return EXIT_FAILURE;
+        }
+
+        if (replays.isEmpty()) {
+            return usage("No replay to edit");
+        }
+
+        if (offline) {
+            if (!new File(OS.getAssetsFolder() + "version").isFile()) {
+                System.err.println("The PSL scripts have never been downloaded, run once without --offline");
+                return EXIT_FAILURE;
+            }
+        } else if (!new PSLUpdater().update()) {
+            return EXIT_FAILURE;
+        }
+
+        // the tasks need the PSL scripts, so they're created after the update
+        List<AbstractTask> tasks;
+        try {
+            tasks = readTasks(tasksPath);
+        } catch (JsonParseException | IllegalArgumentException | IllegalStateException | ClassCastException | UnsupportedOperationException e) {
+            return usage("Invalid tasks file " + tasksPath + ": " + e.getMessage());
+        }
+
+        if (tasks.isEmpty()) {
+            return usage("The tasks file " + tasksPath + " has no task");
+        }
+
+        // replays with the same name as another one are skipped by the executor, and counted as failed
+        TaskExecutor executor = new TaskExecutor(tasks, replays, outputFolder, new ConsoleProgress());
+        if (threads != -1) {
+            executor.setMaxConcurrentReplays(threads);
+        }
+
+        executor.setCompressionPolicy(compression);
+        executor.setPipelined(pipelined);
+        executor.setCompiledCodecs(compiledCodecs);
+        executor.setLazyDecoding(lazyDecoding);
+        executor.setRawEntryCopy(rawEntryCopy);
+        executor.setParallelCompression(parallelCompression);
+        executor.setDryRun(dryRun);
+
+        int failedReplays = executor.editAllReplays();
+
+        System.out.println("Edited " + (replays.size() - failedReplays) + "/" + replays.size() + " replays to " + outputFolder);
+        return (failedReplays == 0) ? EXIT_SUCCESS : EXIT_FAILURE;
+    }
+
+    private static List<AbstractTask> readTasks(String path) {
+        JsonObject json = JsonUtils.fromFile(path, JsonObject.class);
+        if (json == null) {
+            throw new IllegalArgumentException("the file cannot be read");
+        }
+
+        List<AbstractTask> tasks = new ArrayList<>();
+        for (String name : json.keySet()) {
+            JsonObject parameters = json.getAsJsonObject(name);
+
+            switch (name) {
+                case "time": {
+                    TimeChangerTask task = new TimeChangerTask();
+                    task.setTimeOfDay(getParameter(parameters, "time_of_day").getAsInt());
+                    tasks.add(task);
+                    break;
+                }
+
+                case "weather": {
+                    WeatherChangerTask task = new WeatherChangerTask();
+                    task.setWeather(getParameter(parameters, "weather").getAsString());
+                    tasks.add(task);
+                    break;
+                }
+
+                case "username": {
+                    UsernameChangerTask task = new UsernameChangerTask();
+                    task.setUsernames(
+                            getParameter(parameters, "target").getAsString(),
+                            getParameter(parameters, "new_username").getAsString()
+                    );
+                    tasks.add(task);
+                    break;
+                }
+
+                case "skin": {
+                    SkinChangerTask task = new SkinChangerTask();
+                    task.setPlayers(
+                            getParameter(parameters, "target").getAsString(),
+                            getParameter(parameters, "skin_player").getAsString()
+                    );
+                    tasks.add(task);
+                    break;
+                }
+
+                default:
+                    throw new IllegalArgumentException("unknown task \"" + name + "\"");
+            }
+        }
+
+        return tasks;
+    }
+
+    private static JsonElement getParameter(JsonObject parameters, String name) {
+        JsonElement parameter = parameters.get(name);
+        if (parameter == null || parameter.isJsonNull()) {
+            throw new IllegalArgumentException("missing \"" + name + "\"");
+        }
+
+        return parameter;
+    }
+
+    private static int usage(String message) {
+        System.err.println(message);
+        System.err.println();
+        System.err.println(USAGE);
+
+        return EXIT_USAGE;
+    }
+
+    /**
+     * Prints the progress on the standard output, every time it changes by at least a percent
+     */
+    private static class ConsoleProgress implements ProgressListener {
+
+        private String label = "";
+        private int percent = -1;
+
+        @Override
+        public void onStart() {
+            System.out.println("Editing...");
+        }
+
+        @Override
+        public synchronized void setProgress(float progress) {
+            int percent = (int) (progress * 100);
+            if (percent == this.percent) {
+                return;
+            }
+
+            this.percent = percent;
+            print();
+        }
+
+        @Override
+        public synchronized void setLabel(String label) {
+            if (label.equals(this.label)) {
+                return;
+            }
+
+            this.label = label;
+            print();
+        }
+
+        @Override
+        public void onFinish() {
+            System.out.println("Done");
+        }
+
+        private void print() {
+            System.out.println(String.format("[%3d%%] %s", Math.max(this.percent, 0), this.label));
+        }
+    }
+}
@@ -6,7 +6,9 @@ public class Main {
 
     public static void main(String[] args) {
         PSLUpdater updater = new PSLUpdater();
-        updater.update();
+        if (!updater.update()) {
+            System.exit(0);
+        }
 
         ImBob bobLite = new ImBob(updater);
         bobLite.start();
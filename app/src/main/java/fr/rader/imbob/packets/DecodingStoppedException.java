@@ -0,0 +1,32 @@
+package fr.rader.imbob.packets;
+
+/**
+ * Thrown to stop a read script once all the fields the tasks need have been decoded.
+ * The rest of the packet stays in its raw data, and is copied as is if the packet isn't modified.
+ * This is used for control flow, so there's a single instance without a stack trace
+ */
+public class DecodingStoppedException extends RuntimeException {
+
+    public static final DecodingStoppedException INSTANCE = new DecodingStoppedException();
+
+    private DecodingStoppedException() {
+        super("Decoding stopped", null, false, false);
+    }
+
+    /**
+     * Find a {@link DecodingStoppedException} in an exception thrown by a script,
+     * as script engines wrap the exceptions thrown by the code they call
+     *
+     * @param throwable     The exception thrown by the script
+     * @return              true if the script has been stopped by a {@link DecodingStoppedException}
+     */
+    public static boolean isCause(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DecodingStoppedException) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
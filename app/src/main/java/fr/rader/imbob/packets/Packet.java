@@ -1,8 +1,15 @@
 package fr.rader.imbob.packets;
 
+import java.nio.ByteBuffer;
+import java.util.Set;
+
+import fr.rader.imbob.packets.data.Data;
 import fr.rader.imbob.packets.data.DataBlock;
+import fr.rader.imbob.packets.data.DataBlockArray;
 import fr.rader.imbob.protocol.Protocol;
+import fr.rader.imbob.protocol.ProtocolFeatures;
 import fr.rader.imbob.types.VarInt;
+import fr.rader.imbob.utils.data.DataReader;
 
 public class Packet {
 
@@ -14,6 +21,22 @@ public class Packet {
 
     private String packetName;
 
+    /** The packet's body as it was read from the recording, without the packet id */
+    private byte[] rawData;
+    private boolean isModified = false;
+    /** Whether a field has been changed straight in the raw data */
+    private boolean isPatched = false;
+
+    /** The fields the tasks need while the packet is decoded, or null if every field has to be decoded */
+    private Set<String> requiredFields;
+    private int missingRequiredFields;
+
+    /** The amount of bytes of the raw data that have been decoded, or -1 if the whole packet has been decoded */
+    private int decodedLength = -1;
+
+    /** The reader the packet is being decoded from, used to know where each field ends */
+    private DataReader decodingReader;
+
     public Packet(final Protocol protocolVersion, final VarInt packetId, final boolean isConfigurationPacket) {
         this.protocolVersion = protocolVersion;
         this.packetId = packetId;
@@ -26,6 +49,10 @@ public class Packet {
         return this.protocolVersion;
     }
 
+    public ProtocolFeatures getFeatures() {
+        return this.protocolVersion.getFeatures();
+    }
+
     public VarInt getPacketId() {
         return this.packetId;
     }
@@ -43,7 +70,57 @@ public class Packet {
     }
 
     public void add(final String name, final Object value) {
-        this.data.add(name, value);
+        boolean isRequired = isMissingRequiredField(name);
+        addDecoded(new Data(name, value));
+
+        if (isRequired) {
+            requiredFieldDecoded(value instanceof DataBlock || value instanceof DataBlockArray);
+        }
+    }
+
+    public void add(final String name, final int value) {
+        boolean isRequired = isMissingRequiredField(name);
+        addDecoded(new Data(name, value));
+
+        if (isRequired) {
+            requiredFieldDecoded(false);
+        }
+    }
+
+    public void add(final String name, final long value) {
+        boolean isRequired = isMissingRequiredField(name);
+        addDecoded(new Data(name, value));
+
+        if (isRequired) {
+            requiredFieldDecoded(false);
+        }
+    }
+
+    public void add(final String name, final float value) {
+        boolean isRequired = isMissingRequiredField(name);
+        addDecoded(new Data(name, value));
+
+        if (isRequired) {
+            requiredFieldDecoded(false);
+        }
+    }
+
+    public void add(final String name, final double value) {
+        boolean isRequired = isMissingRequiredField(name);
+        addDecoded(new Data(name, value));
+
+        if (isRequired) {
+            requiredFieldDecoded(false);
+        }
+    }
+
+    public void add(final String name, final boolean value) {
+        boolean isRequired = isMissingRequiredField(name);
+        addDecoded(new Data(name, value));
+
+        if (isRequired) {
+            requiredFieldDecoded(false);
+        }
     }
 
     public void update(final String name, final Object value) {
@@ -54,6 +131,230 @@ public class Packet {
         return this.data.get(name, clazz);
     }
 
+    public int getInt(final String name) {
+        return this.data.getInt(name);
+    }
+
+    public long getLong(final String name) {
+        return this.data.getLong(name);
+    }
+
+    public float getFloat(final String name) {
+        return this.data.getFloat(name);
+    }
+
+    public double getDouble(final String name) {
+        return this.data.getDouble(name);
+    }
+
+    public boolean getBoolean(final String name) {
+        return this.data.getBoolean(name);
+    }
+
+    public void setInt(final String name, final int value) {
+        this.data.setInt(name, value);
+    }
+
+    public void setLong(final String name, final long value) {
+        this.data.setLong(name, value);
+    }
+
+    public void setFloat(final String name, final float value) {
+        this.data.setFloat(name, value);
+    }
+
+    public void setDouble(final String name, final double value) {
+        this.data.setDouble(name, value);
+    }
+
+    public void setBoolean(final String name, final boolean value) {
+        this.data.setBoolean(name, value);
+    }
+
+    /**
+     * Keep the bytes this packet has been read from,
+     * so it can be written back as is if it's not modified.
+     * Everything added to the packet so far is considered unmodified
+     *
+     * @param rawData   The packet's body, without the packet id
+     */
+    public void setRawData(final byte[] rawData) {
+        this.rawData = rawData;
+        this.requiredFields = null;
+        this.decodingReader = null;
+        this.isPatched = false;
+
+        clearModified();
+    }
+
+    public byte[] getRawData() {
+        return this.rawData;
+    }
+
+    /**
+     * Mark the packet as modified. This is needed when a value
+     * of the packet is changed in place, like an NBT tag or a VarInt,
+     * because these changes cannot be tracked
+     */
+    public void markModified() {
+        this.isModified = true;
+    }
+
+    /**
+     * Check if the packet has to be written with its write script.
+     * Packets without raw data, like the ones created by tasks, are always considered modified
+     *
+     * @return  true if the packet changed since it has been read
+     */
+    public boolean isModified() {
+        return this.rawData == null || this.isModified || this.data.isModified();
+    }
+
+    /**
+     * Check if a field has been changed in the raw data with {@link Packet#patchLong(String, long)}.
+     * Such a packet isn't modified, but its raw data isn't the same as in the recording anymore
+     *
+     * @return  true if the raw data has been patched
+     */
+    public boolean isPatched() {
+        return this.isPatched;
+    }
+
+    public void clearModified() {
+        this.isModified = false;
+        this.data.clearModified();
+    }
+
+    /**
+     * Only decode the packet up to the given fields.
+     * Once they have all been added, adding one of them throws a {@link DecodingStoppedException}.
+     * This has to be called before the packet is decoded
+     *
+     * @param requiredFields    The fields the tasks need, or null to decode the whole packet
+     */
+    public void setRequiredFields(final Set<String> requiredFields) {
+        this.requiredFields = requiredFields;
+        this.missingRequiredFields = (requiredFields == null) ? 0 : requiredFields.size();
+    }
+
+    /**
+     * Check if the packet can be decoded at all
+     *
+     * @return  false if the tasks don't need any field of the packet
+     */
+    public boolean needsDecoding() {
+        return this.requiredFields == null || !this.requiredFields.isEmpty();
+    }
+
+    /**
+     * Set how much of the raw data has been decoded, when decoding stopped early
+     *
+     * @param decodedLength     The amount of bytes decoded
+     */
+    public void setDecodedLength(final int decodedLength) {
+        this.decodedLength = decodedLength;
+    }
+
+    /**
+     * Get the amount of bytes of the raw data that have been decoded
+     *
+     * @return  The decoded length, or -1 if the whole packet has been decoded
+     */
+    public int getDecodedLength() {
+        return this.decodedLength;
+    }
+
+    /**
+     * Finish decoding a packet that has only been decoded up to the fields the tasks needed.
+     * The fields that have already been decoded keep their value, even if the tasks changed it
+     *
+     * @param decodedPacket     The same packet, decoded from its whole raw data
+     */
+    public void completeDecoding(final Packet decodedPacket) {
+        this.data.putMissing(decodedPacket.data);
+        this.decodedLength = -1;
+    }
+
+    /**
+     * Set the reader the packet is about to be decoded from,
+     * so we know where each field is in the raw data
+     *
+     * @param decodingReader    The reader reading the packet's raw data
+     */
+    public void setDecodingReader(final DataReader decodingReader) {
+        this.decodingReader = decodingReader;
+    }
+
+    /**
+     * Change a long field by overwriting its bytes in the raw data, so the packet doesn't have
+     * to be written by its write script. If the field can't be found in the raw data,
+     * or if the packet has already been modified, the field is changed normally
+     *
+     * @param name      The name of the field
+     * @param value     The new value
+     */
+    public void patchLong(final String name, final long value) {
+        Data data = this.data.get(name);
+        ByteBuffer raw = getPatchableRawData(data, 8);
+
+        if (raw != null && raw.getLong(data.getRawEnd() - 8) == data.getLong()) {
+            raw.putLong(data.getRawEnd() - 8, value);
+            data.setLong(value);
+            data.clearModified();
+            this.isPatched = true;
+            return;
+        }
+
+        setLong(name, value);
+    }
+
+    /**
+     * Check if a field can be patched in the raw data
+     *
+     * @param data  The field to patch
+     * @param size  The size of the field in bytes
+     * @return      The raw data, or null if the field can't be patched
+     */
+    private ByteBuffer getPatchableRawData(final Data data, final int size) {
+        // once the packet is modified, it's written by its write script anyway
+        if (data == null || this.rawData == null || isModified()) {
+            return null;
+        }
+
+        if (data.getFixedSize() != size || data.getRawEnd() < size || data.getRawEnd() > this.rawData.length) {
+            return null;
+        }
+
+        return ByteBuffer.wrap(this.rawData);
+    }
+
+    private void addDecoded(final Data data) {
+        // while decoding, the reader is right after the field's value
+        if (this.decodingReader != null) {
+            data.setRawEnd((int) this.decodingReader.getPosition());
+        }
+
+        this.data.add(data);
+    }
+
+    private boolean isMissingRequiredField(final String name) {
+        return this.requiredFields != null && this.requiredFields.contains(name) && !this.data.contains(name);
+    }
+
+    private void requiredFieldDecoded(final boolean isContainer) {
+        if (isContainer) {
+            // blocks are filled after they're added, so we can't tell when they're
+            // decoded. we have no choice but to decode the whole packet
+            this.requiredFields = null;
+            return;
+        }
+
+        this.missingRequiredFields--;
+        if (this.missingRequiredFields == 0) {
+            throw DecodingStoppedException.INSTANCE;
+        }
+    }
+
     public boolean isEmpty() {
         return this.data.isEmpty();
     }
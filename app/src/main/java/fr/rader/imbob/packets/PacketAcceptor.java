@@ -1,5 +1,10 @@
 package fr.rader.imbob.packets;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
 import fr.rader.imbob.protocol.Protocol;
 
 public class PacketAcceptor {
@@ -10,6 +15,8 @@ public class PacketAcceptor {
     private Protocol fromVersion;
     private Protocol toVersion;
 
+    private Set<String> requiredFields;
+
     private PacketAcceptor(final PacketMetaData packet, final boolean isConfigurationPacket) {
         this.packetToAccept = packet;
         this.isConfigurationPacket = isConfigurationPacket;
@@ -57,6 +64,28 @@ public class PacketAcceptor {
         return this;
     }
 
+    /**
+     * Declare the only fields the task needs, so the packet is only decoded up to them.
+     * The rest of the packet is copied as is when it's written.<br>
+     * If this isn't called, the whole packet is decoded
+     *
+     * @param fieldNames        The names of the fields the task reads or changes
+     * @return                  The {@link PacketAcceptor} instance to chain methods
+     */
+    public PacketAcceptor fields(final String... fieldNames) {
+        this.requiredFields = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(fieldNames)));
+        return this;
+    }
+
+    /**
+     * Get the fields declared with {@link PacketAcceptor#fields(String...)}
+     *
+     * @return  The fields the task needs, or null if the whole packet has to be decoded
+     */
+    public Set<String> getRequiredFields() {
+        return this.requiredFields;
+    }
+
     /**
      * Accepts a packet.<br>
      * A packet is accepted if its protocol version is between {@link PacketAcceptor#fromVersion} and {@link PacketAcceptor#toVersion}, and if the packet id is accepted by the {@link PacketMetaData}.<br>
@@ -1,5 +1,6 @@
 package fr.rader.imbob.packets;
 
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -12,6 +13,12 @@ public class PacketMetaData {
 
     private final Map<String, Integer> versions;
 
+    /** True if this packet is sent during the configuration state, this is optional in packets.json */
+    private boolean configuration;
+
+    /** The {@link PacketMetaData#versions} map, resolved to protocol version numbers */
+    private transient volatile VersionRanges versionRanges;
+
     public PacketMetaData() {
         this.name = "Missing Name";
         this.versions = new LinkedHashMap<>();
@@ -24,19 +31,9 @@ public class PacketMetaData {
      * @return          True if the packet is accepted, false otherwise
      */
     boolean accept(final Packet packet) {
-        Protocol packetVersion = packet.getProtocol();
-
-        // we loop through each version in the versions map
-        for (Map.Entry<String, Integer> entry : this.versions.entrySet()) {
-            if (packetVersion.isBeforeInclusive(ProtocolVersion.getInstance().get(entry.getKey()))) {
-                // once we found the correct protocol, we check if
-                // the packet id associated with it is the same
-                // as the given packet id
-                return entry.getValue() == packet.getPacketId().get();
-            }
-        }
-
-        return false;
+        // the packet is accepted if the packet id of the
+        // first version not older than the packet is the same
+        return getPacketIdForProtocol(packet.getProtocol()) == packet.getPacketId().get();
     }
 
     /**
@@ -46,36 +43,147 @@ public class PacketMetaData {
      * @return          The associated packet id
      */
     public int getPacketIdForProtocol(final Protocol protocol) {
-        // we loop through each version in the versions map
-        for (Map.Entry<String, Integer> entry : this.versions.entrySet()) {
-            // and we return the packet id once we found the correct protocol
-            if (protocol.isBeforeInclusive(ProtocolVersion.getInstance().get(entry.getKey()))) {
-                return entry.getValue();
+        VersionRanges ranges = getVersionRanges();
+        int version = protocol.getVersion();
+
+        // we look for the first version in the versions map that isn't older than the protocol
+        int index;
+        if (ranges.isAscending) {
+            index = firstIndexNotBelow(ranges.bounds, version);
+        } else {
+            index = 0;
+            while (index < ranges.bounds.length && version > ranges.bounds[index]) {
+                index++;
             }
         }
 
         // if the packet id isn't defined, we return -1
-        return -1;
+        return (index < ranges.bounds.length) ? ranges.packetIds[index] : -1;
     }
 
     public int getConfigurationPacketId(final Protocol protocol) {
-        // we loop through each version in the versions map
-        for (Map.Entry<String, Integer> entry : this.versions.entrySet()) {
-            // and we return the packet id once we found the correct protocol
-            if (ProtocolVersion.getInstance().get(entry.getKey()).isBeforeInclusive(protocol)) {
-                return entry.getValue();
+        VersionRanges ranges = getVersionRanges();
+        int version = protocol.getVersion();
+
+        // we look for the first version in the versions map that isn't newer than the protocol
+        int index;
+        if (ranges.isDescending) {
+            index = firstIndexNotAbove(ranges.bounds, version);
+        } else {
+            index = 0;
+            while (index < ranges.bounds.length && ranges.bounds[index] > version) {
+                index++;
             }
         }
 
         // if the packet id isn't defined, we return -1
-        return -1;
+        return (index < ranges.bounds.length) ? ranges.packetIds[index] : -1;
+    }
+
+    private VersionRanges getVersionRanges() {
+        VersionRanges ranges = this.versionRanges;
+        if (ranges == null) {
+            ranges = new VersionRanges(this.versions);
+            this.versionRanges = ranges;
+        }
+
+        return ranges;
+    }
+
+    /**
+     * Binary search in an ascending array
+     *
+     * @return  The index of the first value greater than or equal to the key, or the array's length
+     */
+    private static int firstIndexNotBelow(final int[] values, final int key) {
+        int low = 0;
+        int high = values.length;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Binary search in a descending array
+     *
+     * @return  The index of the first value lower than or equal to the key, or the array's length
+     */
+    private static int firstIndexNotAbove(final int[] values, final int key) {
+        int low = 0;
+        int high = values.length;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] > key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
     }
 
     public String getName() {
         return this.name;
     }
 
+    public boolean isConfigurationPacket() {
+        return this.configuration;
+    }
+
     public Map<String, Integer> getVersions() {
         return this.versions;
     }
+
+    /**
+     * The versions map with the protocol names resolved to protocol versions, in the same order.
+     * Protocol names that don't exist are ignored
+     */
+    private static class VersionRanges {
+
+        private final int[] bounds;
+        private final int[] packetIds;
+
+        private final boolean isAscending;
+        private final boolean isDescending;
+
+        private VersionRanges(final Map<String, Integer> versions) {
+            int[] bounds = new int[versions.size()];
+            int[] packetIds = new int[versions.size()];
+
+            int count = 0;
+            for (Map.Entry<String, Integer> entry : versions.entrySet()) {
+                Protocol protocol = ProtocolVersion.getInstance().get(entry.getKey());
+                if (protocol == null) {
+                    continue;
+                }
+
+                bounds[count] = protocol.getVersion();
+                packetIds[count] = entry.getValue();
+                count++;
+            }
+
+            this.bounds = Arrays.copyOf(bounds, count);
+            this.packetIds = Arrays.copyOf(packetIds, count);
+
+            boolean isAscending = true;
+            boolean isDescending = true;
+            for (int i = 1; i < count; i++) {
+                isAscending &= this.bounds[i - 1] <= this.bounds[i];
+                isDescending &= this.bounds[i - 1] >= this.bounds[i];
+            }
+
+            this.isAscending = isAscending;
+            this.isDescending = isDescending;
+        }
+    }
 }
@@ -3,19 +3,38 @@ package fr.rader.imbob.packets;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import fr.rader.imbob.protocol.Protocol;
+import fr.rader.imbob.protocol.ProtocolVersion;
 import fr.rader.imbob.utils.OS;
 import fr.rader.imbob.utils.json.JsonUtils;
 
 public class Packets {
 
-    private static Packets instance;
+    private static final String PSL_READ = "read";
+    private static final String PSL_WRITE = "write";
+
+    /** Resolved script paths, by protocol version, packet id, connection state and direction */
+    private static final Map<Long, String> PSL_PATHS = new ConcurrentHashMap<>();
+    /** The sorted protocol versions of the scripts in each script folder */
+    private static final Map<String, int[]> PSL_SCRIPT_VERSIONS = new ConcurrentHashMap<>();
+
+    private static volatile Packets instance;
 
     private final List<PacketMetaData> packetData;
 
+    /** The packets by name. These are built once packets.json is loaded */
+    private transient Map<String, PacketMetaData> packetsByName;
+    /** The play state packets of each protocol version, indexed by packet id */
+    private transient Map<Integer, PacketMetaData[]> playPackets;
+    /** The configuration state packets of each protocol version, indexed by packet id */
+    private transient Map<Integer, PacketMetaData[]> configurationPackets;
+    private transient int highestPacketId;
+
     private Packets() {
         this.packetData = new ArrayList<>();
 
@@ -23,62 +42,201 @@ public class Packets {
     }
 
     public static String getPSLWritePath(Protocol protocol, int packetId) {
-        return getPath(protocol, packetId, "write");
+        return getPSLWritePath(protocol, packetId, false);
+    }
+
+    public static String getPSLWritePath(Protocol protocol, int packetId, boolean isConfiguration) {
+        return getPath(protocol, packetId, isConfiguration, PSL_WRITE);
     }
 
     public static String getPSLReadPath(Protocol protocol, int packetId) {
-        return getPath(protocol, packetId, "read");
+        return getPSLReadPath(protocol, packetId, false);
+    }
+
+    public static String getPSLReadPath(Protocol protocol, int packetId, boolean isConfiguration) {
+        return getPath(protocol, packetId, isConfiguration, PSL_READ);
     }
 
-    private static String getPath(final Protocol protocol, final int packetId, final String pslType) {
+    private static String getPath(final Protocol protocol, final int packetId, final boolean isConfiguration, final String pslType) {
+        // the connection state and the direction are stored in the lowest bits,
+        // so the key is unique for each protocol version, packet id, state and direction
+        long key = ((long) protocol.getVersion() << 32)
+                | ((long) packetId << 2)
+                | (isConfiguration ? 2 : 0)
+                | (pslType.equals(PSL_WRITE) ? 1 : 0);
+
+        String path = PSL_PATHS.get(key);
+        if (path == null) {
+            path = resolvePath(protocol, packetId, isConfiguration, pslType);
+            PSL_PATHS.put(key, path);
+        }
+
+        return path;
+    }
+
+    private static String resolvePath(final Protocol protocol, final int packetId, final boolean isConfiguration, final String pslType) {
         StringBuilder path = new StringBuilder(OS.getAssetsFolder() + "protocols/");
 
-        PacketMetaData packet = get(protocol, packetId);
+        PacketMetaData packet = get(protocol, packetId, isConfiguration);
         path.append(packet.getName());
         path.append('/');
         path.append(pslType);
         path.append('/');
 
-        List<String> protocols = Arrays.asList(new File(path.toString()).list());
-        Collections.sort(protocols);
+        int[] scriptVersions = PSL_SCRIPT_VERSIONS.computeIfAbsent(path.toString(), Packets::listScriptVersions);
+
+        // we get the most recent script that isn't newer than the protocol
+        int scriptVersion = -1;
+        for (int version : scriptVersions) {
+            if (version > protocol.getVersion()) {
+                break;
+            }
+
+            scriptVersion = version;
+        }
 
-        protocols.stream()
-                .map(string -> Integer.parseInt(string.replace(".psl", "")))
-                .filter(protocolId -> protocol.getVersion() >= protocolId)
-                .reduce((first, second) -> second)
-                .ifPresent(protocolId -> {
-                    path.append(protocolId);
-                    path.append(".psl");
-                });
+        if (scriptVersion != -1) {
+            path.append(scriptVersion);
+            path.append(".psl");
+        }
 
         return path.toString();
     }
 
+    /**
+     * List the protocol versions that have a script in the given folder
+     *
+     * @param folder    The folder containing the PSL scripts
+     * @return          The sorted protocol versions of the scripts in the folder
+     */
+    private static int[] listScriptVersions(final String folder) {
+        String[] scripts = new File(folder).list();
+        if (scripts == null) {
+            return new int[0];
+        }
+
+        int[] versions = new int[scripts.length];
+        for (int i = 0; i < scripts.length; i++) {
+            versions[i] = Integer.parseInt(scripts[i].replace(".psl", ""));
+        }
+
+        Arrays.sort(versions);
+
+        return versions;
+    }
+
     public static Packets getInstance() {
         if (instance == null) {
-            instance = JsonUtils.fromFile(OS.getAssetsFolder() + "packets.json", Packets.class);
+            Packets packets = JsonUtils.fromFile(OS.getAssetsFolder() + "packets.json", Packets.class);
+            packets.buildIndex();
+
+            instance = packets;
         }
 
         return instance;
     }
 
-    public static PacketMetaData get(Protocol protocol, int packetId) {
-        for (PacketMetaData data : getInstance().packetData) {
-            if (data.getPacketIdForProtocol(protocol) == packetId) {
-                return data;
+    /**
+     * Build the lookup tables of every known protocol,
+     * so getting a packet by name or by id is a single lookup
+     */
+    private void buildIndex() {
+        Map<String, PacketMetaData> packetsByName = new HashMap<>();
+        int highestPacketId = -1;
+
+        for (PacketMetaData data : this.packetData) {
+            // if two packets have the same name, the first one wins
+            packetsByName.putIfAbsent(data.getName(), data);
+
+            for (int packetId : data.getVersions().values()) {
+                highestPacketId = Math.max(highestPacketId, packetId);
             }
         }
 
-        return null;
+        this.packetsByName = packetsByName;
+        this.highestPacketId = highestPacketId;
+
+        this.playPackets = new ConcurrentHashMap<>();
+        this.configurationPackets = new ConcurrentHashMap<>();
+        for (Protocol protocol : ProtocolVersion.getInstance().getProtocols()) {
+            this.playPackets.put(protocol.getVersion(), buildTable(protocol, false));
+            this.configurationPackets.put(protocol.getVersion(), buildTable(protocol, true));
+        }
     }
 
-    public static PacketMetaData get(String name) {
-        for (PacketMetaData data : getInstance().packetData) {
-            if (data.getName().equals(name)) {
+    /**
+     * Build the table of the packets of a protocol and connection state
+     *
+     * @param protocol          The protocol
+     * @param isConfiguration   true to build the configuration state table, false for the play state
+     * @return                  The packets, indexed by packet id
+     */
+    private PacketMetaData[] buildTable(final Protocol protocol, final boolean isConfiguration) {
+        PacketMetaData[] table = new PacketMetaData[this.highestPacketId + 1];
+
+        for (PacketMetaData data : this.packetData) {
+            if (data.isConfigurationPacket() != isConfiguration) {
+                continue;
+            }
+
+            int packetId = isConfiguration ? data.getConfigurationPacketId(protocol) : data.getPacketIdForProtocol(protocol);
+
+            // like the list, the first packet with a given id wins
+            if (packetId >= 0 && packetId < table.length && table[packetId] == null) {
+                table[packetId] = data;
+            }
+        }
+
+        return table;
+    }
+
+    public static PacketMetaData get(Protocol protocol, int packetId) {
+        return get(protocol, packetId, false);
+    }
+
+    /**
+     * Get a packet from its id.<br>
+     * The packets marked as configuration packets in packets.json are only returned in the configuration state.
+     * In the configuration state, the play state packets are used for the ids without a configuration packet
+     *
+     * @param protocol          The protocol of the packet
+     * @param packetId          The packet id
+     * @param isConfiguration   true if the packet is sent during the configuration state
+     * @return                  The packet, or null if there is no packet with this id
+     */
+    public static PacketMetaData get(Protocol protocol, int packetId, boolean isConfiguration) {
+        Packets packets = getInstance();
+        if (packetId < 0 || packetId > packets.highestPacketId) {
+            return null;
+        }
+
+        if (isConfiguration) {
+            PacketMetaData data = packets.getTable(protocol, true)[packetId];
+            if (data != null) {
                 return data;
             }
         }
 
-        return null;
+        return packets.getTable(protocol, false)[packetId];
+    }
+
+    private PacketMetaData[] getTable(final Protocol protocol, final boolean isConfiguration) {
+        Map<Integer, PacketMetaData[]> tables = isConfiguration ? this.configurationPackets : this.playPackets;
+
+        // the tables of the known protocols are built when packets.json is loaded
+        return tables.computeIfAbsent(protocol.getVersion(), version -> buildTable(protocol, isConfiguration));
+    }
+
+    /**
+     * Get the highest packet id used by any packet, in any protocol and connection state
+     *
+     * @return  The highest packet id, or -1 if there are no packets
+     */
+    public static int getHighestPacketId() {
+        return getInstance().highestPacketId;
+    }
+
+    public static PacketMetaData get(String name) {
+        return getInstance().packetsByName.get(name);
     }
 }
@@ -1,24 +1,230 @@
 package fr.rader.imbob.packets.data;
 
+import fr.rader.imbob.types.VarInt;
+import fr.rader.imbob.types.VarLong;
+
 public class Data {
 
+    private static final byte TYPE_OBJECT = 0;
+    private static final byte TYPE_INT = 1;
+    private static final byte TYPE_LONG = 2;
+    private static final byte TYPE_FLOAT = 3;
+    private static final byte TYPE_DOUBLE = 4;
+    private static final byte TYPE_BOOLEAN = 5;
+
     private final String name;
+
+    /**
+     * The value is either an object, or a primitive stored in {@link Data#bits}.
+     * Primitives are only boxed if {@link Data#getValue()} is called
+     */
+    private byte type;
     private Object value;
+    private long bits;
+
+    private boolean isModified = false;
+
+    /** Where the value ends in the packet's raw data, or -1 if we don't know */
+    private int rawEnd = -1;
 
     public Data(final String name, final Object value) {
         this.name = name;
         this.value = value;
     }
 
+    public Data(final String name, final int value) {
+        this.name = name;
+        setPrimitive(TYPE_INT, value);
+    }
+
+    public Data(final String name, final long value) {
+        this.name = name;
+        setPrimitive(TYPE_LONG, value);
+    }
+
+    public Data(final String name, final float value) {
+        this.name = name;
+        setPrimitive(TYPE_FLOAT, Float.floatToRawIntBits(value));
+    }
+
+    public Data(final String name, final double value) {
+        this.name = name;
+        setPrimitive(TYPE_DOUBLE, Double.doubleToRawLongBits(value));
+    }
+
+    public Data(final String name, final boolean value) {
+        this.name = name;
+        setPrimitive(TYPE_BOOLEAN, value ? 1 : 0);
+    }
+
     public String getName() {
         return this.name;
     }
 
     public Object getValue() {
-        return this.value;
+        switch (this.type) {
+            case TYPE_INT:      return (int) this.bits;
+            case TYPE_LONG:     return this.bits;
+            case TYPE_FLOAT:    return Float.intBitsToFloat((int) this.bits);
+            case TYPE_DOUBLE:   return Double.longBitsToDouble(this.bits);
+            case TYPE_BOOLEAN:  return this.bits != 0;
+            default:            return this.value;
+        }
     }
 
     public void setValue(Object value) {
+        this.type = TYPE_OBJECT;
         this.value = value;
+        this.isModified = true;
+    }
+
+    /**
+     * Get the value as an int. Numbers and VarInts are converted
+     *
+     * @return  The value as an int
+     * @throws ClassCastException   if the value isn't a number
+     */
+    public int getInt() {
+        switch (this.type) {
+            case TYPE_INT:
+            case TYPE_LONG:     return (int) this.bits;
+            case TYPE_OBJECT:   return (int) getObjectAsLong();
+            default:            return (int) getDouble();
+        }
+    }
+
+    public long getLong() {
+        switch (this.type) {
+            case TYPE_INT:
+            case TYPE_LONG:     return this.bits;
+            case TYPE_OBJECT:   return getObjectAsLong();
+            default:            return (long) getDouble();
+        }
+    }
+
+    public float getFloat() {
+        if (this.type == TYPE_FLOAT) {
+            return Float.intBitsToFloat((int) this.bits);
+        }
+
+        return (float) getDouble();
+    }
+
+    public double getDouble() {
+        switch (this.type) {
+            case TYPE_INT:
+            case TYPE_LONG:     return this.bits;
+            case TYPE_FLOAT:    return Float.intBitsToFloat((int) this.bits);
+            case TYPE_DOUBLE:   return Double.longBitsToDouble(this.bits);
+            case TYPE_BOOLEAN:  throw new ClassCastException(this.name + " is a boolean");
+            default:            return ((Number) this.value).doubleValue();
+        }
+    }
+
+    public boolean getBoolean() {
+        if (this.type == TYPE_BOOLEAN) {
+            return this.bits != 0;
+        }
+
+        return (Boolean) getValue();
+    }
+
+    public void setInt(final int value) {
+        setPrimitive(TYPE_INT, value);
+        this.isModified = true;
+    }
+
+    public void setLong(final long value) {
+        setPrimitive(TYPE_LONG, value);
+        this.isModified = true;
+    }
+
+    public void setFloat(final float value) {
+        setPrimitive(TYPE_FLOAT, Float.floatToRawIntBits(value));
+        this.isModified = true;
+    }
+
+    public void setDouble(final double value) {
+        setPrimitive(TYPE_DOUBLE, Double.doubleToRawLongBits(value));
+        this.isModified = true;
+    }
+
+    public void setBoolean(final boolean value) {
+        setPrimitive(TYPE_BOOLEAN, value ? 1 : 0);
+        this.isModified = true;
+    }
+
+    /**
+     * Get the amount of bytes the value takes in a packet, if it's always the same.
+     * This is the case for longs, floats, doubles and booleans.
+     * Ints can come from bytes, shorts or ints, so their size isn't known
+     *
+     * @return  The size of the value, or -1 if it depends on how it was read
+     */
+    public int getFixedSize() {
+        switch (this.type) {
+            case TYPE_LONG:
+            case TYPE_DOUBLE:   return 8;
+            case TYPE_FLOAT:    return 4;
+            case TYPE_BOOLEAN:  return 1;
+            default:            return -1;
+        }
+    }
+
+    public int getRawEnd() {
+        return this.rawEnd;
+    }
+
+    public void setRawEnd(final int rawEnd) {
+        this.rawEnd = rawEnd;
+    }
+
+    private void setPrimitive(final byte type, final long bits) {
+        this.type = type;
+        this.bits = bits;
+        this.value = null;
+    }
+
+    private long getObjectAsLong() {
+        if (this.value instanceof VarInt) {
+            return ((VarInt) this.value).get();
+        }
+
+        if (this.value instanceof VarLong) {
+            return ((VarLong) this.value).get();
+        }
+
+        return ((Number) this.value).longValue();
+    }
+
+    /**
+     * Check if the value has been changed, or if it holds data that has been changed
+     *
+     * @return  true if the value changed since the last call to {@link Data#clearModified()}
+     */
+    public boolean isModified() {
+        if (this.isModified) {
+            return true;
+        }
+
+        if (this.value instanceof DataBlock) {
+            return ((DataBlock) this.value).isModified();
+        }
+
+        if (this.value instanceof DataBlockArray) {
+            return ((DataBlockArray) this.value).isModified();
+        }
+
+        return false;
+    }
+
+    public void clearModified() {
+        this.isModified = false;
+
+        if (this.value instanceof DataBlock) {
+            ((DataBlock) this.value).clearModified();
+        } else if (this.value instanceof DataBlockArray) {
+            ((DataBlockArray) this.value).clearModified();
+        }
     }
 }
@@ -5,8 +5,19 @@ import java.util.List;
 
 public class DataBlock {
 
+    private static final int INITIAL_INDEX_SIZE = 8;
+
     private final List<Data> data;
 
+    /**
+     * An open addressing hash table of the data, by name.
+     * Its size is a power of two and it's never more than half full.
+     * If multiple data have the same name, only the first one is in the index
+     */
+    private Data[] index;
+
+    private boolean isModified = false;
+
     public DataBlock() {
         this.data = new ArrayList<>();
     }
@@ -15,8 +26,37 @@ public class DataBlock {
         add(new Data(name, value));
     }
 
+    public void add(final String name, final int value) {
+        add(new Data(name, value));
+    }
+
+    public void add(final String name, final long value) {
+        add(new Data(name, value));
+    }
+
+    public void add(final String name, final float value) {
+        add(new Data(name, value));
+    }
+
+    public void add(final String name, final double value) {
+        add(new Data(name, value));
+    }
+
+    public void add(final String name, final boolean value) {
+        add(new Data(name, value));
+    }
+
     public void add(final Data data) {
         this.data.add(data);
+        this.isModified = true;
+
+        if (this.index == null) {
+            this.index = new Data[INITIAL_INDEX_SIZE];
+        } else if (this.data.size() * 2 > this.index.length) {
+            growIndex();
+        }
+
+        addToIndex(this.index, data);
     }
 
     public <T> T get(final String name, final Class<T> clazz) {
@@ -29,22 +69,96 @@ public class DataBlock {
     }
 
     public Data get(final String name) {
-        return this.data.stream()
-                    .filter(data -> data.getName().equals(name))
-                    .findFirst()
-                    .orElse(null);
+        if (this.index == null) {
+            return null;
+        }
+
+        int mask = this.index.length - 1;
+        for (int slot = hash(name) & mask; ; slot = (slot + 1) & mask) {
+            Data data = this.index[slot];
+
+            // the index is never full, so we always end up on an empty slot
+            if (data == null || data.getName().equals(name)) {
+                return data;
+            }
+        }
     }
 
     public void update(final String name, final Object value) {
-        if (!contains(name)) {
+        Data data = get(name);
+        if (data == null) {
             return;
         }
 
-        get(name).setValue(value);
+        data.setValue(value);
+    }
+
+    public int getInt(final String name) {
+        return getExisting(name).getInt();
+    }
+
+    public long getLong(final String name) {
+        return getExisting(name).getLong();
+    }
+
+    public float getFloat(final String name) {
+        return getExisting(name).getFloat();
+    }
+
+    public double getDouble(final String name) {
+        return getExisting(name).getDouble();
+    }
+
+    public boolean getBoolean(final String name) {
+        return getExisting(name).getBoolean();
+    }
+
+    public void setInt(final String name, final int value) {
+        Data data = get(name);
+        if (data != null) {
+            data.setInt(value);
+        }
+    }
+
+    public void setLong(final String name, final long value) {
+        Data data = get(name);
+        if (data != null) {
+            data.setLong(value);
+        }
+    }
+
+    public void setFloat(final String name, final float value) {
+        Data data = get(name);
+        if (data != null) {
+            data.setFloat(value);
+        }
+    }
+
+    public void setDouble(final String name, final double value) {
+        Data data = get(name);
+        if (data != null) {
+            data.setDouble(value);
+        }
+    }
+
+    public void setBoolean(final String name, final boolean value) {
+        Data data = get(name);
+        if (data != null) {
+            data.setBoolean(value);
+        }
+    }
+
+    private Data getExisting(final String name) {
+        Data data = get(name);
+        if (data == null) {
+            throw new IllegalArgumentException("No data named " + name);
+        }
+
+        return data;
     }
 
     public boolean contains(final String name) {
-        return this.data.stream().anyMatch(data -> data.getName().equals(name));
+        return get(name) != null;
     }
 
     public boolean isEmpty() {
@@ -54,4 +168,76 @@ public class DataBlock {
     public void putAll(final DataBlock data) {
         data.data.forEach(this::add);
     }
+
+    /**
+     * Add the data of the given block that this block doesn't have yet
+     *
+     * @param data  The block to take the data from
+     */
+    public void putMissing(final DataBlock data) {
+        for (Data value : data.data) {
+            if (!contains(value.getName())) {
+                add(value);
+            }
+        }
+    }
+
+    /**
+     * Check if data has been added to this block, or if any of its data has been changed
+     *
+     * @return  true if this block changed since the last call to {@link DataBlock#clearModified()}
+     */
+    public boolean isModified() {
+        if (this.isModified) {
+            return true;
+        }
+
+        for (Data data : this.data) {
+            if (data.isModified()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public void clearModified() {
+        this.isModified = false;
+
+        for (Data data : this.data) {
+            data.clearModified();
+        }
+    }
+
+    private void growIndex() {
+        Data[] index = new Data[this.index.length * 2];
+
+        // we add the data in order, so the first data with a given name stays in the index
+        for (Data data : this.data) {
+            addToIndex(index, data);
+        }
+
+        this.index = index;
+    }
+
+    private static void addToIndex(final Data[] index, final Data data) {
+        int mask = index.length - 1;
+        for (int slot = hash(data.getName()) & mask; ; slot = (slot + 1) & mask) {
+            if (index[slot] == null) {
+                index[slot] = data;
+                return;
+            }
+
+            if (index[slot].getName().equals(data.getName())) {
+                // the first data with this name stays in the index
+                return;
+            }
+        }
+    }
+
+    private static int hash(final String name) {
+        // strings cache their hash code, so this doesn't go through the characters every time
+        int hash = name.hashCode();
+        return hash ^ (hash >>> 16);
+    }
 }
@@ -8,6 +8,8 @@ public class DataBlockArray implements Iterable<DataBlock> {
 
     private final List<DataBlock> dataBlocks;
 
+    private boolean isModified = false;
+
     public DataBlockArray() {
         this.dataBlocks = new ArrayList<>();
     }
@@ -16,6 +18,7 @@ public class DataBlockArray implements Iterable<DataBlock> {
         DataBlock block = new DataBlock();
 
         this.dataBlocks.add(block);
+        this.isModified = true;
 
         return block;
     }
@@ -24,6 +27,33 @@ public class DataBlockArray implements Iterable<DataBlock> {
         return this.dataBlocks.size();
     }
 
+    /**
+     * Check if a block has been created in this array, or if any of its blocks has been changed
+     *
+     * @return  true if this array changed since the last call to {@link DataBlockArray#clearModified()}
+     */
+    public boolean isModified() {
+        if (this.isModified) {
+            return true;
+        }
+
+        for (DataBlock block : this.dataBlocks) {
+            if (block.isModified()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public void clearModified() {
+        this.isModified = false;
+
+        for (DataBlock block : this.dataBlocks) {
+            block.clearModified();
+        }
+    }
+
     @Override
     public Iterator<DataBlock> iterator() {
         return this.dataBlocks.iterator();
@@ -5,6 +5,8 @@ public class Protocol {
     private final String name;
     private final int version;
 
+    private volatile ProtocolFeatures features;
+
     public Protocol(final String name, final int version) {
         this.name = name;
         this.version = version;
@@ -18,6 +20,21 @@ public class Protocol {
         return this.version;
     }
 
+    /**
+     * Get what this protocol supports. They're only computed the first time
+     *
+     * @return  The features of this protocol
+     */
+    public ProtocolFeatures getFeatures() {
+        ProtocolFeatures features = this.features;
+        if (features == null) {
+            features = new ProtocolFeatures(this);
+            this.features = features;
+        }
+
+        return features;
+    }
+
     /**
      * <pre>
      * Check if the given protocol version is newer or as new as the other version
@@ -0,0 +1,59 @@
+package fr.rader.imbob.protocol;
+
+/**
+ * What changes in the protocol from one version to another.<br>
+ * The features are computed once per {@link Protocol}, so checking
+ * them doesn't compare protocol versions anymore.
+ * Get them with {@link Protocol#getFeatures()}
+ */
+public class ProtocolFeatures {
+
+    /** Since 1.14, the Y coordinate is in the lowest bits of a position */
+    private final boolean hasYLastPosition;
+
+    /** Since 1.19.3, player_info has a bitfield of actions instead of a single action */
+    private final boolean hasPlayerInfoActionBitfield;
+
+    /** Since 1.20.2, there is a configuration state between login and play */
+    private final boolean hasConfigurationState;
+
+    /** From 1.16 to 1.20.1, join_game holds the dimension codec */
+    private final boolean hasJoinGameDimensionCodec;
+
+    ProtocolFeatures(Protocol protocol) {
+        this.hasYLastPosition = isAfterInclusive(protocol, "MC_1_14");
+        this.hasPlayerInfoActionBitfield = isAfterInclusive(protocol, "MC_1_19_3");
+        this.hasConfigurationState = isAfterInclusive(protocol, "MC_1_20_2");
+        // since 1.20.2, the registries are sent during the configuration state instead
+        this.hasJoinGameDimensionCodec = isAfterInclusive(protocol, "MC_1_16") && !this.hasConfigurationState;
+    }
+
+    public boolean hasYLastPosition() {
+        return this.hasYLastPosition;
+    }
+
+    public boolean hasPlayerInfoActionBitfield() {
+        return this.hasPlayerInfoActionBitfield;
+    }
+
+    public boolean hasConfigurationState() {
+        return this.hasConfigurationState;
+    }
+
+    public boolean hasJoinGameDimensionCodec() {
+        return this.hasJoinGameDimensionCodec;
+    }
+
+    /**
+     * Check if a protocol is as new or newer than a version.
+     * Versions missing from protocol_versions.json are considered newer than any protocol
+     */
+    private static boolean isAfterInclusive(Protocol protocol, String versionName) {
+        Protocol version = ProtocolVersion.getInstance().get(versionName);
+        if (version == null) {
+            return false;
+        }
+
+        return protocol.isAfterInclusive(version);
+    }
+}
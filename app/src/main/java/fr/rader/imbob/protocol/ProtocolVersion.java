@@ -1,47 +1,59 @@
 package fr.rader.imbob.protocol;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import fr.rader.imbob.utils.OS;
 import fr.rader.imbob.utils.json.JsonUtils;
 
 public class ProtocolVersion {
 
-    private static ProtocolVersion instance;
+    private static volatile ProtocolVersion instance;
 
     private final List<Protocol> protocolVersions;
 
+    /** The protocols by name and by version. These are built once protocol_versions.json is loaded */
+    private transient Map<String, Protocol> protocolsByName;
+    private transient Map<Integer, Protocol> protocolsById;
+
     private ProtocolVersion() {
         this.protocolVersions = new ArrayList<>();
     }
 
     public Protocol get(String protocolVersion) {
-        for (Protocol protocol : this.protocolVersions) {
-            if (protocol.getName().equals(protocolVersion)) {
-                return protocol;
-            }
-        }
-
-        return null;
+        return this.protocolsByName.get(protocolVersion);
     }
 
     public Protocol getFromId(int id) {
-        for (Protocol protocol : this.protocolVersions) {
-            if (protocol.getVersion() == id) {
-                return protocol;
-            }
-        }
+        return this.protocolsById.get(id);
+    }
 
-        return null;
+    public List<Protocol> getProtocols() {
+        return Collections.unmodifiableList(this.protocolVersions);
     }
 
     public static ProtocolVersion getInstance() {
         if (instance == null) {
-            instance = JsonUtils.fromFile(OS.getAssetsFolder() + "protocol_versions.json", ProtocolVersion.class);
+            ProtocolVersion protocolVersion = JsonUtils.fromFile(OS.getAssetsFolder() + "protocol_versions.json", ProtocolVersion.class);
+            protocolVersion.buildIndex();
+
+            instance = protocolVersion;
         }
 
         return instance;
     }
-}
 
+    private void buildIndex() {
+        this.protocolsByName = new HashMap<>();
+        this.protocolsById = new HashMap<>();
+
+        // like a linear search would, the first protocol with a given name or version wins
+        for (Protocol protocol : this.protocolVersions) {
+            this.protocolsByName.putIfAbsent(protocol.getName(), protocol);
+            this.protocolsById.putIfAbsent(protocol.getVersion(), protocol);
+        }
+    }
+}
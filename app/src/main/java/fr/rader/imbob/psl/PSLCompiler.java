@@ -0,0 +1,259 @@
+package fr.rader.imbob.psl;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import com.google.gson.JsonObject;
+
+import fr.rader.imbob.updater.PSLUpdater;
+import fr.rader.imbob.utils.OS;
+import fr.rader.imbob.utils.json.JsonUtils;
+
+/**
+ * Compiles PSL scripts to Java classes implementing {@link PacketCodec}.<br>
+ * PSL scripts are run by BeanShell in strict Java mode, so most of them are valid Java statements:
+ * the script is used as the body of the codec's method, and compiled with the system Java compiler.<br>
+ * The compiled classes are cached on disk in a folder per assets version, so a script is only compiled once.
+ * Scripts that can't be compiled, or running without a Java compiler (on a JRE),
+ * make {@link PSLCompiler#getCodec(String)} return null, the script then has to be run with BeanShell.
+ */
+public class PSLCompiler {
+
+    private static final String PACKAGE = "fr.rader.imbob.psl.generated";
+    private static final String CLASS_PREFIX = "Codec_";
+
+    /** Bump this when the generated code changes, so the old cached classes aren't used anymore */
+    private static final int GENERATOR_VERSION = 1;
+
+    private static final String[] IMPORTS = {
+            "fr.rader.imbob.packets.Packet",
+            "fr.rader.imbob.packets.data.Data",
+            "fr.rader.imbob.packets.data.DataBlock",
+            "fr.rader.imbob.packets.data.DataBlockArray",
+            "fr.rader.imbob.types.VarInt",
+            "fr.rader.imbob.types.VarLong",
+            "fr.rader.imbob.types.Position",
+            "fr.rader.imbob.types.nbt.*",
+            "fr.rader.imbob.utils.data.DataReader",
+            "fr.rader.imbob.utils.data.DataWriter"
+    };
+
+    /** The compiled codecs, by script path */
+    private static final Map<String, PacketCodec> CODECS = new ConcurrentHashMap<>();
+    /** The scripts that couldn't be compiled */
+    private static final Set<String> UNSUPPORTED_SCRIPTS = ConcurrentHashMap.newKeySet();
+
+    private static File cacheFolder;
+    private static ClassLoader classLoader;
+
+    /**
+     * Get the compiled codec of a PSL script, compiling it if needed
+     *
+     * @param path  The path to the PSL script
+     * @return      The codec, or null if the script can't be compiled
+     */
+    public static PacketCodec getCodec(String path) {
+        PacketCodec codec = CODECS.get(path);
+        if (codec != null || UNSUPPORTED_SCRIPTS.contains(path)) {
+            return codec;
+        }
+
+        return loadCodec(path);
+    }
+
+    private static synchronized PacketCodec loadCodec(String path) {
+        // another thread may have compiled it while we were waiting
+        PacketCodec codec = CODECS.get(path);
+        if (codec != null || UNSUPPORTED_SCRIPTS.contains(path)) {
+            return codec;
+        }
+
+        try {
+            String source = PSLInterpreter.getSource(path);
+            String className = CLASS_PREFIX + hash(source);
+
+            File classFile = new File(getCacheFolder(), PACKAGE.replace('.', '/') + "/" + className + ".class");
+            File failureFile = new File(getCacheFolder(), className + ".failed");
+
+            if (!classFile.exists() && (failureFile.exists() || !compile(className, source, failureFile))) {
+                UNSUPPORTED_SCRIPTS.add(path);
+                return null;
+            }
+
+            codec = (PacketCodec) getClassLoader()
+                    .loadClass(PACKAGE + "." + className)
+                    .getDeclaredConstructor()
+                    .newInstance();
+
+            CODECS.put(path, codec);
+            return codec;
+        } catch (IOException | ReflectiveOperationException | LinkageError e) {
+            e.printStackTrace();
+        }
+
+        UNSUPPORTED_SCRIPTS.add(path);
+        return null;
+    }
+
+    /**
+     * Compile a script to the cache folder
+     *
+     * @param className     The name of the class to generate
+     * @param source        The PSL script
+     * @param failureFile   The file to write the compiler's errors to, if the script doesn't compile
+     * @return              true if the script compiled
+     */
+    private static boolean compile(String className, String source, File failureFile) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            // we're running on a JRE, there's nothing we can compile
+            return false;
+        }
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        List<String> options = Arrays.asList(
+                "-d", getCacheFolder().getAbsolutePath(),
+                "-classpath", System.getProperty("java.class.path"),
+                "-nowarn",
+                "-g:none"
+        );
+
+        boolean success;
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+            success = compiler.getTask(
+                    null,
+                    fileManager,
+                    diagnostics,
+                    options,
+                    null,
+                    Collections.singletonList(new SourceFile(className, generateSource(className, source)))
+            ).call();
+        }
+
+        if (!success) {
+            // we keep the errors, so we don't try to compile this script again
+            StringBuilder errors = new StringBuilder();
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                errors.append(diagnostic.getMessage(null)).append('\n');
+            }
+
+            Files.write(failureFile.toPath(), errors.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        return success;
+    }
+
+    private static String generateSource(String className, String script) {
+        StringBuilder source = new StringBuilder();
+        source.append("package ").append(PACKAGE).append(";\n\n");
+
+        for (String importedClass : IMPORTS) {
+            source.append("import ").append(importedClass).append(";\n");
+        }
+
+        source.append("\npublic final class ").append(className).append(" implements ").append(PacketCodec.class.getName()).append(" {\n\n");
+        source.append("    @Override\n");
+        source.append("    public void execute(DataReader reader, DataWriter writer, Packet packet) throws Exception {\n");
+        source.append(script);
+        source.append("\n    }\n}\n");
+
+        return source.toString();
+    }
+
+    private static File getCacheFolder() throws IOException {
+        if (cacheFolder == null) {
+            File folder = new File(OS.getImBobFolder() + "codecs/" + getAssetsVersion());
+            if (!folder.isDirectory() && !folder.mkdirs()) {
+                throw new IOException("Could not create " + folder);
+            }
+
+            cacheFolder = folder;
+        }
+
+        return cacheFolder;
+    }
+
+    private static ClassLoader getClassLoader() throws IOException {
+        if (classLoader == null) {
+            classLoader = new URLClassLoader(
+                    new URL[] { getCacheFolder().toURI().toURL() },
+                    PSLCompiler.class.getClassLoader()
+            );
+        }
+
+        return classLoader;
+    }
+
+    private static int getAssetsVersion() {
+        String versionPath = OS.getAssetsFolder() + "version";
+        if (!new File(versionPath).exists()) {
+            return PSLUpdater.INVALID_VERSION;
+        }
+
+        JsonObject version = JsonUtils.fromFile(versionPath, JsonObject.class);
+        if (version == null || !version.has("version")) {
+            return PSLUpdater.INVALID_VERSION;
+        }
+
+        return version.get("version").getAsInt();
+    }
+
+    /**
+     * Hash the script with everything the generated class depends on,
+     * so a script gets a new class if the generator or the Java version changes
+     */
+    private static String hash(String source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update((GENERATOR_VERSION + "/" + System.getProperty("java.specification.version") + "/").getBytes(StandardCharsets.UTF_8));
+            digest.update(source.getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder hash = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hash.append(String.format("%02x", b));
+            }
+
+            return hash.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM has SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class SourceFile extends SimpleJavaFileObject {
+
+        private final String source;
+
+        private SourceFile(String className, String source) {
+            super(URI.create("string:///" + PACKAGE.replace('.', '/') + "/" + className + Kind.SOURCE.extension), Kind.SOURCE);
+
+            this.source = source;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return this.source;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package fr.rader.imbob.psl;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import bsh.BshMethod;
+import bsh.EvalError;
+import bsh.Interpreter;
+import bsh.TargetError;
+import bsh.UtilEvalError;
+import fr.rader.imbob.packets.DecodingStoppedException;
+import fr.rader.imbob.windows.impl.LoggerWindow;
+
+/**
+ * Runs PSL scripts with BeanShell.<br>
+ * Each script is parsed only once: the first time it is executed, it is declared
+ * as a BeanShell method, and the parsed method is invoked from then on.
+ * Variables set with {@link PSLInterpreter#set(String, Object)} are visible in the scripts.<br>
+ * An interpreter is not thread-safe, each thread needs its own.
+ */
+public class PSLInterpreter {
+
+    private static final String[] IMPORTS = {
+            "fr.rader.imbob.types.VarInt",
+            "fr.rader.imbob.types.VarLong",
+            "fr.rader.imbob.types.Position",
+            "fr.rader.imbob.types.nbt.TagBase",
+            "fr.rader.imbob.types.nbt.TagByte",
+            "fr.rader.imbob.types.nbt.TagByteArray",
+            "fr.rader.imbob.types.nbt.TagCompound",
+            "fr.rader.imbob.types.nbt.TagDouble",
+            "fr.rader.imbob.types.nbt.TagFloat",
+            "fr.rader.imbob.types.nbt.TagInt",
+            "fr.rader.imbob.types.nbt.TagIntArray",
+            "fr.rader.imbob.types.nbt.TagList",
+            "fr.rader.imbob.types.nbt.TagLong",
+            "fr.rader.imbob.types.nbt.TagLongArray",
+            "fr.rader.imbob.types.nbt.TagShort",
+            "fr.rader.imbob.types.nbt.TagString",
+            "fr.rader.imbob.packets.data.Data",
+            "fr.rader.imbob.packets.data.DataBlock",
+            "fr.rader.imbob.packets.data.DataBlockArray"
+    };
+
+    private static final Object[] NO_ARGUMENTS = new Object[0];
+    private static final Class<?>[] NO_PARAMETERS = new Class<?>[0];
+
+    /** The source of the scripts, by path. This is shared by all the interpreters */
+    private static final Map<String, String> SOURCES = new ConcurrentHashMap<>();
+
+    private final Interpreter interpreter;
+
+    /** The parsed scripts, by path */
+    private final Map<String, BshMethod> scripts;
+    /** The scripts that cannot be declared as a method, they are sourced every time */
+    private final Set<String> sourcedScripts;
+
+    public PSLInterpreter() {
+        this.interpreter = new Interpreter();
+        this.interpreter.setStrictJava(true);
+
+        for (String className : IMPORTS) {
+            this.interpreter.getNameSpace().importClass(className);
+        }
+
+        this.scripts = new HashMap<>();
+        this.sourcedScripts = new HashSet<>();
+    }
+
+    /**
+     * Set a variable the scripts can use
+     *
+     * @param name      The variable's name
+     * @param value     The variable's value
+     */
+    public void set(String name, Object value) throws EvalError {
+        this.interpreter.set(name, value);
+    }
+
+    /**
+     * Execute the script at the given path.
+     * The script is only read and parsed the first time it is executed.
+     * If the script is stopped by a {@link DecodingStoppedException}, it is thrown as is
+     *
+     * @param path      The path to the PSL script
+     */
+    public void execute(String path) throws IOException, EvalError {
+        try {
+            run(path);
+        } catch (TargetError e) {
+            // BeanShell wraps the exceptions thrown by the scripts,
+            // but the caller expects to catch this one as is
+            if (DecodingStoppedException.isCause(e.getTarget())) {
+                throw DecodingStoppedException.INSTANCE;
+            }
+
+            throw e;
+        }
+    }
+
+    private void run(String path) throws IOException, EvalError {
+        BshMethod script = this.scripts.get(path);
+        if (script == null) {
+            if (this.sourcedScripts.contains(path)) {
+                this.interpreter.source(path);
+                return;
+            }
+
+            script = compile(path);
+            if (script == null) {
+                this.sourcedScripts.add(path);
+                this.interpreter.source(path);
+                return;
+            }
+
+            this.scripts.put(path, script);
+        }
+
+        script.invoke(NO_ARGUMENTS, this.interpreter);
+    }
+
+    /**
+     * Declare the script as a method without parameters in the interpreter
+     *
+     * @param path      The path to the PSL script
+     * @return          The parsed script, or null if it couldn't be declared as a method
+     */
+    private BshMethod compile(String path) throws IOException {
+        String source = getSource(path);
+        String methodName = "pslScript" + this.scripts.size();
+
+        try {
+            this.interpreter.eval("void " + methodName + "() {\n" + source + "\n}");
+            return this.interpreter.getNameSpace().getMethod(methodName, NO_PARAMETERS);
+        } catch (EvalError | UtilEvalError e) {
+            LoggerWindow.warn("Could not parse " + path + " once, it will be sourced for every packet: " + e.getMessage());
+        }
+
+        return null;
+    }
+
+    /**
+     * Get the source of a PSL script. The file is only read once
+     *
+     * @param path      The path to the PSL script
+     * @return          The script's source
+     */
+    static String getSource(String path) throws IOException {
+        String source = SOURCES.get(path);
+        if (source == null) {
+            source = new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
+            SOURCES.put(path, source);
+        }
+
+        return source;
+    }
+}
@@ -0,0 +1,21 @@
+package fr.rader.imbob.psl;
+
+import fr.rader.imbob.packets.Packet;
+import fr.rader.imbob.utils.data.DataReader;
+import fr.rader.imbob.utils.data.DataWriter;
+
+/**
+ * A PSL script compiled to Java by {@link PSLCompiler}.<br>
+ * Read scripts get a reader and no writer, write scripts get a writer and no reader.
+ */
+public interface PacketCodec {
+
+    /**
+     * Run the script on a packet
+     *
+     * @param reader    The reader to read the packet from, or null for write scripts
+     * @param writer    The writer to write the packet to, or null for read scripts
+     * @param packet    The packet to fill or to write
+     */
+    void execute(DataReader reader, DataWriter writer, Packet packet) throws Exception;
+}
@@ -0,0 +1,76 @@
+package fr.rader.imbob.replay;
+
+import fr.rader.imbob.packets.PacketMetaData;
+import fr.rader.imbob.packets.Packets;
+import fr.rader.imbob.protocol.Protocol;
+import fr.rader.imbob.utils.data.DataReader;
+import fr.rader.imbob.utils.data.DataWriter;
+
+/**
+ * Walks the records of a recording.tmcpr.<br>
+ * Each record is the packet's timestamp, the packet's size with its packet id,
+ * the packet id as a VarInt, then the packet's body.
+ */
+public class RecordingUtils {
+
+    /** login_success has had this id in every protocol so far, it's used when packets.json doesn't have it */
+    private static final int DEFAULT_LOGIN_SUCCESS_PACKET_ID = 0x02;
+
+    /**
+     * Get the id of login_success, the last packet of the login state
+     *
+     * @param protocol  The protocol of the recording
+     * @return          The packet id of login_success
+     */
+    public static int getLoginSuccessPacketId(final Protocol protocol) {
+        PacketMetaData loginSuccess = Packets.get("login_success");
+        if (loginSuccess == null) {
+            return DEFAULT_LOGIN_SUCCESS_PACKET_ID;
+        }
+
+        int packetId = loginSuccess.getPacketIdForProtocol(protocol);
+        return (packetId == -1) ? DEFAULT_LOGIN_SUCCESS_PACKET_ID : packetId;
+    }
+
+    /**
+     * Copy the records of the login state as they are, up to and including login_success
+     *
+     * @param reader    The reader, at the start of the recording
+     * @param writer    The writer to copy the records to, or null to skip them
+     * @param protocol  The protocol of the recording
+     */
+    public static void copyLoginRecords(final DataReader reader, final DataWriter writer, final Protocol protocol) {
+        int loginSuccessPacketId = getLoginSuccessPacketId(protocol);
+        int packetId;
+
+        do {
+            int timestamp = reader.readInt();
+            int packetSize = reader.readInt();
+            packetId = reader.readVarIntRaw();
+            int packetIdLength = reader.getLastVarIntSize();
+
+            if (writer == null) {
+                reader.skip(packetSize - packetIdLength);
+            } else {
+                copyRecord(reader, writer, timestamp, packetSize, packetId, packetIdLength);
+            }
+        } while (packetId != loginSuccessPacketId);
+    }
+
+    /**
+     * Write a record as it was in the recording, once its header has been read
+     *
+     * @param reader            The reader, right after the record's packet id
+     * @param writer            The writer to copy the record to
+     * @param timestamp         The record's timestamp
+     * @param packetSize        The size of the packet, with its packet id
+     * @param packetId          The packet id
+     * @param packetIdLength    The amount of bytes the packet id was encoded with
+     */
+    public static void copyRecord(final DataReader reader, final DataWriter writer, final int timestamp, final int packetSize, final int packetId, final int packetIdLength) {
+        writer.writeInt(timestamp);
+        writer.writeInt(packetSize);
+        writer.writeVarInt(packetId, packetIdLength);
+        reader.transferTo(writer, packetSize - packetIdLength);
+    }
+}
@@ -3,6 +3,7 @@ package fr.rader.imbob.tasks;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Queue;
+import java.util.Set;
 
 import fr.rader.imbob.packets.Packet;
 import fr.rader.imbob.packets.PacketAcceptor;
@@ -63,6 +64,21 @@ public abstract class AbstractTask {
         return false;
     }
 
+    /**
+     * Get the fields this task needs in the given {@link Packet}, as declared by the acceptor accepting it
+     *
+     * @return  The fields the task needs, or null if the whole packet has to be decoded
+     */
+    final Set<String> getRequiredFields(Packet packet) {
+        for (PacketAcceptor acceptor : this.acceptors) {
+            if (acceptor.accept(packet)) {
+                return acceptor.getRequiredFields();
+            }
+        }
+
+        return null;
+    }
+
     /**
      * Execute an edit on the given {@link Packet}.
      * All edits have to be done in this method.
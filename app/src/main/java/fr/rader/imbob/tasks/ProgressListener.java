@@ -0,0 +1,34 @@
+package fr.rader.imbob.tasks;
+
+/**
+ * Receives the progress of a {@link TaskExecutor}.<br>
+ * Replays can be edited on multiple threads, so the methods
+ * can be called from any of the editing threads
+ */
+public interface ProgressListener {
+
+    /**
+     * Called once, before the first replay is edited
+     */
+    void onStart();
+
+    /**
+     * Set the progress of all the replays.
+     * The progress is between 0f and 1f, where 0f means 0% and 1f means 100%
+     *
+     * @param progress  The progress of all the replays
+     */
+    void setProgress(float progress);
+
+    /**
+     * Set what is currently being done
+     *
+     * @param label     The description of what is being done
+     */
+    void setLabel(String label);
+
+    /**
+     * Called once, after all the replays have been edited
+     */
+    void onFinish();
+}
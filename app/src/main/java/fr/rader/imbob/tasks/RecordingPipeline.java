@@ -0,0 +1,161 @@
+package fr.rader.imbob.tasks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import fr.rader.imbob.utils.io.ChunkPipe;
+
+/**
+ * Splits the editing of a recording in three stages, each on its own thread:
+ * <ul>
+ *     <li>the decompression stage reads the compressed recording and fills the input pipe</li>
+ *     <li>the transformation stage is the thread using this class, it reads from
+ *         {@link RecordingPipeline#getInputStream()} and writes to {@link RecordingPipeline#getOutputStream()}</li>
+ *     <li>the compression stage empties the output pipe into the compressed recording</li>
+ * </ul>
+ * The pipes are bounded, so a slow stage makes the others wait instead of using more memory.
+ */
+class RecordingPipeline {
+
+    private static final int CHUNK_SIZE = 65536;
+    private static final int CHUNK_COUNT = 16;
+
+    private final ChunkPipe decompressedPipe;
+    private final ChunkPipe transformedPipe;
+
+    private final FutureTask<Void> decompressionStage;
+    private final FutureTask<Void> compressionStage;
+
+    /**
+     * Create the pipeline and start the decompression and compression stages
+     *
+     * @param name              The name of the recording, used to name the threads
+     * @param compressedInput   The stream to read the recording from. It is closed by the decompression stage
+     * @param compressedOutput  The stream to write the edited recording to. It is not closed
+     */
+    RecordingPipeline(String name, InputStream compressedInput, OutputStream compressedOutput) {
+        this.decompressedPipe = new ChunkPipe(CHUNK_SIZE, CHUNK_COUNT);
+        this.transformedPipe = new ChunkPipe(CHUNK_SIZE, CHUNK_COUNT);
+
+        this.decompressionStage = startStage(name + " decompression", () -> {
+            try (InputStream input = compressedInput;
+                 OutputStream output = this.decompressedPipe.getOutputStream()) {
+                copy(input, output);
+            } catch (Throwable e) {
+                // errors too, otherwise the other side of the pipe would wait forever
+                this.decompressedPipe.fail(e);
+                throw e;
+            }
+        });
+
+        this.compressionStage = startStage(name + " compression", () -> {
+            try {
+                copy(this.transformedPipe.getInputStream(), compressedOutput);
+                compressedOutput.flush();
+            } catch (Throwable e) {
+                // errors too, otherwise the other side of the pipe would wait forever
+                this.transformedPipe.fail(e);
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Get the decompressed recording
+     *
+     * @return  The stream to read the decompressed recording from
+     */
+    InputStream getInputStream() {
+        return this.decompressedPipe.getInputStream();
+    }
+
+    /**
+     * Get the stream the edited recording has to be written to.
+     * It must not be closed, {@link RecordingPipeline#finish()} takes care of it
+     *
+     * @return  The stream to write the edited recording to
+     */
+    OutputStream getOutputStream() {
+        return this.transformedPipe.getOutputStream();
+    }
+
+    /**
+     * Close the output pipe and wait for both stages to be done.
+     * Once this returns, the edited recording has been fully written to the compressed output
+     *
+     * @throws IOException  if one of the stages failed
+     */
+    void finish() throws IOException {
+        this.transformedPipe.getOutputStream().close();
+
+        await(this.compressionStage);
+        await(this.decompressionStage);
+    }
+
+    /**
+     * Stop both stages because the transformation stage failed, and wait for them to stop.
+     * The compression stage writes to the zip writer, so it can't be discarded before
+     *
+     * @param cause     The reason why the transformation stage failed
+     */
+    void abort(Throwable cause) {
+        this.decompressedPipe.fail(cause);
+        this.transformedPipe.fail(cause);
+
+        awaitStopped(this.compressionStage);
+        awaitStopped(this.decompressionStage);
+    }
+
+    private static FutureTask<Void> startStage(String name, Stage stage) {
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            stage.run();
+            return null;
+        });
+
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+
+        return task;
+    }
+
+    private static void await(FutureTask<Void> stage) throws IOException {
+        try {
+            stage.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the pipeline");
+        } catch (ExecutionException e) {
+            throw new IOException("A pipeline stage failed", e.getCause());
+        }
+    }
+
+    private static void awaitStopped(FutureTask<Void> stage) {
+        try {
+            stage.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // the stage failed because the pipes failed, we already know why
+        }
+    }
+
+    private static void copy(InputStream input, OutputStream output) throws IOException {
+        byte[] buffer = new byte[CHUNK_SIZE];
+
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Stage {
+
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,109 @@
+package fr.rader.imbob.tasks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import fr.rader.imbob.packets.Packet;
+import fr.rader.imbob.packets.Packets;
+import fr.rader.imbob.protocol.Protocol;
+import fr.rader.imbob.types.VarInt;
+
+/**
+ * Knows which tasks are interested in which packet for a single protocol.<br>
+ * The tasks accepting each packet id are computed once per connection state,
+ * so finding the tasks for a packet is a single array lookup.
+ */
+class TaskDispatcher {
+
+    /** Shared by every packet id no task accepts */
+    private static final List<AbstractTask> NO_TASKS = Collections.emptyList();
+
+    private final List<AbstractTask> tasks;
+    private final Protocol protocol;
+
+    /** The tasks accepting each packet id, indexed by packet id */
+    private List<AbstractTask>[] tasksByPacketId;
+    /** The fields the tasks need in each packet, indexed by packet id. null means every field */
+    private Set<String>[] requiredFieldsByPacketId;
+
+    TaskDispatcher(List<AbstractTask> tasks, Protocol protocol, boolean isConfiguration) {
+        this.tasks = tasks;
+        this.protocol = protocol;
+
+        setConfiguration(isConfiguration);
+    }
+
+    /**
+     * Rebuild the dispatch table for the given connection state.
+     * This has to be called when the replay goes from the configuration state to the play state
+     *
+     * @param isConfiguration   true if the next packets are configuration packets
+     */
+    void setConfiguration(boolean isConfiguration) {
+        @SuppressWarnings("unchecked")
+        List<AbstractTask>[] table = (List<AbstractTask>[]) new List[Packets.getHighestPacketId() + 1];
+        @SuppressWarnings("unchecked")
+        Set<String>[] requiredFields = (Set<String>[]) new Set[table.length];
+
+        for (int packetId = 0; packetId < table.length; packetId++) {
+            // the tasks only look at the protocol, the packet id
+            // and the connection state, so an empty packet is enough
+            Packet packet = new Packet(this.protocol, new VarInt(packetId), isConfiguration);
+
+            List<AbstractTask> acceptingTasks = new ArrayList<>();
+            Set<String> fields = new HashSet<>();
+            for (AbstractTask task : this.tasks) {
+                if (!task.accept(packet)) {
+                    continue;
+                }
+
+                acceptingTasks.add(task);
+
+                // if a single task needs the whole packet, every field is decoded
+                Set<String> taskFields = task.getRequiredFields(packet);
+                if (taskFields == null || fields == null) {
+                    fields = null;
+                } else {
+                    fields.addAll(taskFields);
+                }
+            }
+
+            table[packetId] = acceptingTasks.isEmpty() ? NO_TASKS : acceptingTasks;
+            requiredFields[packetId] = (fields == null) ? null : Collections.unmodifiableSet(fields);
+        }
+
+        this.tasksByPacketId = table;
+        this.requiredFieldsByPacketId = requiredFields;
+    }
+
+    /**
+     * Get the tasks accepting the given packet id, in the order they have to be executed
+     *
+     * @param packetId  The packet id
+     * @return          The tasks accepting the packet, or an empty list if no task accepts it
+     */
+    List<AbstractTask> getTasks(int packetId) {
+        if (packetId < 0 || packetId >= this.tasksByPacketId.length) {
+            return NO_TASKS;
+        }
+
+        return this.tasksByPacketId[packetId];
+    }
+
+    /**
+     * Get the fields the tasks accepting the given packet id need
+     *
+     * @param packetId  The packet id
+     * @return          The fields to decode, or null if the whole packet has to be decoded
+     */
+    Set<String> getRequiredFields(int packetId) {
+        if (packetId < 0 || packetId >= this.requiredFieldsByPacketId.length) {
+            return null;
+        }
+
+        return this.requiredFieldsByPacketId[packetId];
+    }
+}
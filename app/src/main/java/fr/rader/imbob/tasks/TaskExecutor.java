@@ -2,180 +2,592 @@ package fr.rader.imbob.tasks;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.LinkedList;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Queue;
-import java.util.stream.Collectors;
-
-import bsh.EvalError;
-import bsh.Interpreter;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fr.rader.imbob.packets.DecodingStoppedException;
 import fr.rader.imbob.packets.Packet;
 import fr.rader.imbob.packets.Packets;
 import fr.rader.imbob.protocol.Protocol;
+import fr.rader.imbob.psl.PSLCompiler;
+import fr.rader.imbob.psl.PSLInterpreter;
+import fr.rader.imbob.psl.PacketCodec;
+import fr.rader.imbob.replay.RecordingUtils;
 import fr.rader.imbob.replay.ReplayMetaData;
 import fr.rader.imbob.types.VarInt;
 import fr.rader.imbob.utils.data.DataReader;
 import fr.rader.imbob.utils.data.DataWriter;
+import fr.rader.imbob.utils.zip.CompressionPolicy;
 import fr.rader.imbob.utils.zip.ZipReader;
 import fr.rader.imbob.utils.zip.ZipWriter;
 import fr.rader.imbob.windows.impl.LoggerWindow;
-import fr.rader.imbob.windows.impl.ProgressBarWindow;
-import imgui.ImGui;
-import imgui.ImGuiIO;
-import imgui.flag.ImGuiConfigFlags;
 
 public class TaskExecutor {
 
-    private final ProgressBarWindow progressBar;
+    /** Progress of a single replay is tracked in permille */
+    private static final int PROGRESS_STEPS = 1000;
+
+    private final ProgressListener progressListener;
 
     private final List<AbstractTask> tasks;
     private final List<File> replays;
+    /** The folder the edited replays are written to */
+    private final File outputFolder;
 
-    private final Interpreter interpreter;
+    /**
+     * PSL interpreters are not thread-safe,
+     * so each thread editing replays gets its own
+     */
+    private final ThreadLocal<PSLInterpreter> interpreter;
+
+    /** The progress of each replay, in permille */
+    private final AtomicIntegerArray replayProgress;
+    /** The sum of all the replays' progress, in permille */
+    private final AtomicLong totalProgress;
+    private final AtomicInteger editedReplays;
+    private final AtomicInteger failedReplays;
+
+    private int maxConcurrentReplays;
+    private boolean pipelined;
+    private boolean compiledCodecs;
+    private boolean lazyDecoding;
+    private boolean rawEntryCopy;
+    private boolean parallelCompression;
+    private boolean dryRun;
+    private CompressionPolicy compressionPolicy;
 
-    public TaskExecutor(List<AbstractTask> tasks, List<File> replays, ProgressBarWindow progressBar) {
+    /**
+     * @param tasks             The tasks to apply
+     * @param replays           The replays to edit, they are only read.
+     *                          A replay with the same name as a replay before it is skipped and counted as failed
+     * @param outputFolder      The folder the edited replays are written to, with the same name as the original replays
+     * @param progressListener  The listener to send the progress to
+     */
+    public TaskExecutor(List<AbstractTask> tasks, List<File> replays, File outputFolder, ProgressListener progressListener) {
         tasks.sort((o1, o2) -> o2.getPriority() - o1.getPriority());
 
         this.tasks = tasks;
-        this.replays = replays;
-        this.progressBar = progressBar;
-
-        this.interpreter = new Interpreter();
-        this.interpreter.setStrictJava(true);
-        this.interpreter.getNameSpace().importClass("fr.rader.imbob.types.VarInt");
-        this.interpreter.getNameSpace().importClass("fr.rader.imbob.types.VarLong");
-        this.interpreter.getNameSpace().importClass("fr.rader.imbob.types.Position");
-        this.interpreter.getNameSpace().importClass("fr.rader.imbob.types.nbt.TagBase");
-        this.interpreter.getNameSpace().importClass("fr.rader.imbob.types.nbt.TagByte");
-        this.interpreter.getNameSpace().importClass("fr.rader.imbob.types.nbt.TagByteArray");
-        this.interpreter.getNameSpace().importClass("fr.rader.imbob.types.nbt.TagCompound");
-        this.interpreter.getNameSpace().importClass("fr.rader.imbob.types.nbt.TagDouble");
-        this.interpreter.getNameSpace().importClass("fr.rader.imbob.types.nbt.TagFloat");
-        this.interpreter.getNameSpace().importClass("fr.rader.imbob.types.nbt.TagInt");
-        this.interpreter.getNameSpace().importClass("fr.rader.imbob.types.nbt.TagIntArray");
-        this.interpreter.getNameSpace().importClass("fr.rader.imbob.types.nbt.TagList");
-        this.interpreter.getNameSpace().importClass("fr.rader.imbob.types.nbt.TagLong");
-        this.interpreter.getNameSpace().importClass("fr.rader.imbob.types.nbt.TagLongArray");
-        this.interpreter.getNameSpace().importClass("fr.rader.imbob.types.nbt.TagShort");
-        this.interpreter.getNameSpace().importClass("fr.rader.imbob.types.nbt.TagString");
-        this.interpreter.getNameSpace().importClass("fr.rader.imbob.packets.data.Data");
-        this.interpreter.getNameSpace().importClass("fr.rader.imbob.packets.data.DataBlock");
-        this.interpreter.getNameSpace().importClass("fr.rader.imbob.packets.data.DataBlockArray");
+        this.replays = removeDuplicateNames(replays);
+        this.outputFolder = outputFolder;
+        this.progressListener = progressListener;
+
+        this.interpreter = ThreadLocal.withInitial(PSLInterpreter::new);
+
+        this.replayProgress = new AtomicIntegerArray(this.replays.size());
+        this.totalProgress = new AtomicLong();
+        this.editedReplays = new AtomicInteger();
+        this.failedReplays = new AtomicInteger(replays.size() - this.replays.size());
+
+        this.maxConcurrentReplays = Runtime.getRuntime().availableProcessors();
+        this.pipelined = true;
+        this.compiledCodecs = true;
+        this.lazyDecoding = true;
+        this.rawEntryCopy = true;
+        this.parallelCompression = true;
+        this.dryRun = true;
+        this.compressionPolicy = CompressionPolicy.MATCH_ORIGINAL;
+    }
+
+    /**
+     * Set the maximum amount of replays that can be edited at the same time.
+     * By default, this is the number of available processors
+     *
+     * @param maxConcurrentReplays  The maximum amount of replays to edit at once, 1 to edit them one by one
+     */
+    public void setMaxConcurrentReplays(int maxConcurrentReplays) {
+        this.maxConcurrentReplays = Math.max(1, maxConcurrentReplays);
+    }
+
+    /**
+     * Set whether the recordings are decompressed, edited and compressed on three separate threads.
+     * This is enabled by default
+     *
+     * @param pipelined     true to use one thread per stage, false to do everything on the editing thread
+     */
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    /**
+     * Set whether the PSL scripts are compiled to Java classes.
+     * Scripts that can't be compiled are still run with BeanShell.
+     * This is enabled by default
+     *
+     * @param compiledCodecs    true to use the compiled scripts, false to only use BeanShell
+     */
+    public void setCompiledCodecs(boolean compiledCodecs) {
+        this.compiledCodecs = compiledCodecs;
+    }
+
+    /**
+     * Set whether packets are only decoded up to the fields the tasks declared they need.
+     * The rest of these packets is copied as is. This is enabled by default
+     *
+     * @param lazyDecoding  true to decode only the needed fields, false to always decode whole packets
+     */
+    public void setLazyDecoding(boolean lazyDecoding) {
+        this.lazyDecoding = lazyDecoding;
+    }
+
+    /**
+     * Set whether the entries other than the recording are copied to the edited replay as they are compressed,
+     * instead of being inflated and deflated again. This is enabled by default
+     *
+     * @param rawEntryCopy  true to copy the compressed entries as is, false to compress them again
+     */
+    public void setRawEntryCopy(boolean rawEntryCopy) {
+        this.rawEntryCopy = rawEntryCopy;
+    }
+
+    /**
+     * Set whether the edited recording is deflated in blocks on multiple threads.
+     * This is enabled by default
+     *
+     * @param parallelCompression   true to deflate the recording on multiple threads, false to use a single deflater
+     */
+    public void setParallelCompression(boolean parallelCompression) {
+        this.parallelCompression = parallelCompression;
+    }
+
+    /**
+     * Set whether the tasks are first run on each recording without writing anything, to find out if they change it.
+     * The replays they don't change are then kept as they are, without being compressed again.
+     * The replays they do change are read a second time, but only up to the first change. This is enabled by default
+     *
+     * @param dryRun    true to find out if a replay is changed before rewriting it, false to find out while rewriting it
+     */
+    public void setDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    /**
+     * Set how the edited recording, and the entries that aren't copied as is, are compressed.
+     * By default, they're compressed like in the original replay
+     *
+     * @param compressionPolicy     The compression policy
+     */
+    public void setCompressionPolicy(CompressionPolicy compressionPolicy) {
+        this.compressionPolicy = compressionPolicy;
     }
 
     /**
      * Apply all the tasks to the replays.
-     * This will lock the user inputs and start editing
-     * in a separate thread, one replay at a time.
-     * Once editing is done, user inputs will be unlocked.
+     * This will start editing in a separate thread,
+     * up to {@link TaskExecutor#maxConcurrentReplays} replays at a time.
+     * The progress listener is told when editing starts and when it's done.
      */
     public void applyAllTaskEdits() {
-        new Thread(() -> {
-            ImGuiIO io = ImGui.getIO();
-            // disable any user inputs
-            io.setConfigFlags(ImGuiConfigFlags.NavNoCaptureKeyboard | ImGuiConfigFlags.NoMouse);
+        new Thread(this::editAllReplays).start();
+    }
+
+    /**
+     * Apply all the tasks to the replays, and wait for all of them to be edited
+     *
+     * @return  The number of replays that could not be edited
+     */
+    public int editAllReplays() {
+        this.progressListener.onStart();
+
+        try {
+            if (!this.outputFolder.isDirectory() && !this.outputFolder.mkdirs()) {
+                LoggerWindow.error("Could not create " + this.outputFolder.getAbsolutePath());
+                return this.failedReplays.get() + this.replays.size();
+            }
 
-            // show the progress bar
-            this.progressBar.setVisible(true);
             // do the edits
-            this.replays.forEach(this::applyTaskEdits);
+            editReplays();
+        } finally {
+            this.progressListener.onFinish();
+        }
 
-            returnUserControl();
-        }).start();
+        return this.failedReplays.get();
+    }
+
+    /**
+     * Remove the replays that have the same name as a replay before them,
+     * they would be written to the same file in the output folder
+     *
+     * @return  The replays with unique names
+     */
+    private static List<File> removeDuplicateNames(List<File> replays) {
+        List<File> uniqueReplays = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+
+        for (File replay : replays) {
+            if (!names.add(replay.getName())) {
+                LoggerWindow.warn("Skipping " + replay + ", another replay is already named " + replay.getName());
+                continue;
+            }
+
+            uniqueReplays.add(replay);
+        }
+
+        return uniqueReplays;
+    }
+
+    /**
+     * Edit all the replays, either one after the other or
+     * on a pool of {@link TaskExecutor#maxConcurrentReplays} threads
+     */
+    private void editReplays() {
+        int workers = Math.min(this.maxConcurrentReplays, this.replays.size());
+        if (workers <= 1) {
+            for (int i = 0; i < this.replays.size(); i++) {
+                try {
+                    applyTaskEdits(i);
+                } catch (Throwable e) {
+                    // we keep going with the other replays, like the thread pool does
+                    replayFailed(i, e);
+                }
+            }
+
+            return;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+
+        List<Future<?>> edits = new ArrayList<>();
+        for (int i = 0; i < this.replays.size(); i++) {
+            final int replayIndex = i;
+            edits.add(pool.submit(() -> applyTaskEdits(replayIndex)));
+        }
+
+        pool.shutdown();
+
+        // we wait for all the replays to be edited
+        for (int i = 0; i < edits.size(); i++) {
+            try {
+                edits.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                pool.shutdownNow();
+                return;
+            } catch (ExecutionException e) {
+                replayFailed(i, e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Count a replay that failed with an unexpected exception or error
+     *
+     * @param replayIndex   The index of the replay
+     * @param cause         What the replay failed with
+     */
+    private void replayFailed(int replayIndex, Throwable cause) {
+        this.failedReplays.incrementAndGet();
+        LoggerWindow.error("Could not edit " + this.replays.get(replayIndex).getName() + ": " + cause);
+        cause.printStackTrace();
     }
 
     /**
      * Apply all edits to a single replay file.
      * This method is private because applyAllTaskEdits can be used for a single replay
      *
-     * @param replay    The replay to edit
+     * @param replayIndex   The index of the replay to edit
      */
-    private void applyTaskEdits(File replay) {
-        this.progressBar.setProgress(0f);
-        this.progressBar.setLabel("Editing " + replay.getName() + "...");
-
-        try {
-            ZipReader zipReader = new ZipReader(replay);
-            DataReader reader = new DataReader(zipReader.getEntryAsStream("recording.tmcpr"));
-            ZipWriter zipWriter = new ZipWriter(replay);
-            DataWriter writer = new DataWriter(zipWriter.createEntry("recording.tmcpr"));
+    private void applyTaskEdits(int replayIndex) {
+        File replay = this.replays.get(replayIndex);
+        PSLInterpreter interpreter = this.interpreter.get();
+
+        if (this.replays.size() == 1) {
+            this.progressListener.setLabel("Editing " + replay.getName() + "...");
+        } else {
+            updateBatchLabel();
+        }
 
-            ignoreLoginSuccess(reader, writer);
+        // the original replay is read in place, and the edited replay is written once, to the output folder
+        File output = new File(this.outputFolder, replay.getName());
 
-            // give BeanShell the DataReader instance, so we can
-            // read data from the recording in packet definition scripts
-            this.interpreter.set("reader", reader);
+        ZipReader zipReader = null;
+        ZipWriter zipWriter = null;
+        try {
+            zipReader = new ZipReader(replay);
 
             ReplayMetaData metaData = ReplayMetaData.from(zipReader.getEntryAsStream("metaData.json"));
             if (metaData.getProtocol() == null) {
                 LoggerWindow.warn(replay.getName() + " cannot be edited because its protocol isn't supported");
+                this.failedReplays.incrementAndGet();
                 return;
             }
 
-            Protocol protocol = metaData.getProtocol();
-
-            Queue<Packet> packets = new LinkedList<>();
+            if (this.dryRun && !isRecordingChanged(replayIndex, interpreter, zipReader, metaData)) {
+                // no task changes anything, so the recording is neither written nor deflated again
+                zipReader.close();
+                keepReplay(replay, output);
+                return;
+            }
 
-            int finishConfigurationPacketId = Packets.get("finish_configuration").getConfigurationPacketId(protocol);
-            boolean isConfiguration = (finishConfigurationPacketId != -1);
-            while (reader.hasNext()) {
-                int timestamp = reader.readInt();
-                int packetSize = reader.readInt();
-                VarInt packetId = reader.readVarInt();
+            zipWriter = new ZipWriter(output);
+            // the recording is most of the replay, so it's the only entry worth deflating on multiple threads
+            zipWriter.setParallelCompression(this.parallelCompression);
+            zipWriter.setCompressionPolicy(this.compressionPolicy);
 
-                this.progressBar.setProgress((float) timestamp / (float) metaData.getDuration());
+            InputStream recordingInput = zipReader.getEntryAsStream("recording.tmcpr");
+            OutputStream recordingOutput = zipWriter.createEntry(
+                    "recording.tmcpr",
+                    zipReader.getEntry("recording.tmcpr").getMethod()
+            );
 
-                Packet packet = new Packet(protocol, packetId, isConfiguration);
-                List<AbstractTask> tasks = this.tasks.stream()
-                        .filter(task -> task.accept(packet))
-                        .collect(Collectors.toList());
+            // with the pipeline, decompressing and compressing
+            // the recording is done on other threads
+            RecordingPipeline pipeline = null;
+            if (this.pipelined) {
+                pipeline = new RecordingPipeline(replay.getName(), recordingInput, recordingOutput);
+                recordingInput = pipeline.getInputStream();
+                recordingOutput = pipeline.getOutputStream();
+            }
 
-                for (AbstractTask task : tasks) {
-                    if (packet.isEmpty()) {
-                        this.interpreter.set("packet", packet);
+            DataReader reader = new DataReader(recordingInput);
+            DataWriter writer = new DataWriter(recordingOutput);
 
-                        packet.setPacketName(Packets.get(protocol, packet.getPacketId().get()).getName());
-                        deserializePacket(packet);
-                    }
+            boolean isChanged;
+            try {
+                isChanged = editRecording(replayIndex, interpreter, metaData, reader, writer);
+                writer.flush();
 
-                    packets.add(packet);
-                    task.execute(packet, packets);
+                if (pipeline != null) {
+                    pipeline.finish();
                 }
-
-                if (packet.isEmpty()) {
-                    writer.writeInt(timestamp);
-                    writer.writeInt(packetSize);
-                    writer.writeVarInt(packetId.get());
-                    writer.writeByteArray(reader.readFollowingBytes(packetSize - packetId.size()));
-                } else {
-                    writePackets(timestamp, packets, writer);
+            } catch (Throwable e) {
+                // we stop the other stages, even on errors, otherwise they would wait forever
+                if (pipeline != null) {
+                    pipeline.abort(e);
                 }
 
-                if (isConfiguration && packetId.get() == finishConfigurationPacketId) {
-                    isConfiguration = false;
-                }
+                throw e;
             }
 
             reader.close();
 
-            writer.flush();
+            if (!isChanged) {
+                // without the dry run, we only find out now that no task changed anything
+                zipReader.close();
+                zipWriter.discard();
+                keepReplay(replay, output);
+                return;
+            }
+
             zipWriter.closeEntry();
+            zipWriter.setParallelCompression(false);
 
-            zipReader.dumpToZipWriter(zipWriter);
+            zipReader.dumpToZipWriter(zipWriter, this.rawEntryCopy);
+            // the original replay has to be closed before it can be replaced
             zipReader.close();
 
-            writer.close();
             zipWriter.close();
 
             zipWriter.move();
-        } catch (IOException | EvalError e) {
+        } catch (IOException | UncheckedIOException e) {
+            this.failedReplays.incrementAndGet();
+            LoggerWindow.error("Could not edit " + replay.getName() + ": " + e.getMessage());
             e.printStackTrace();
+        } finally {
+            closeZips(zipReader, zipWriter);
+
+            // the replay is done, even if it failed
+            setReplayProgress(replayIndex, 1, 1);
+            this.editedReplays.incrementAndGet();
+
+            if (this.replays.size() > 1) {
+                updateBatchLabel();
+            }
+        }
+    }
+
+    /**
+     * Keep a replay no task changed. It's copied as is to the output folder,
+     * unless the output folder is where the replay already is
+     *
+     * @param replay    The original replay
+     * @param output    The file the edited replay would have been written to
+     */
+    private void keepReplay(File replay, File output) throws IOException {
+        if (!output.getCanonicalFile().equals(replay.getCanonicalFile())) {
+            Files.copy(replay.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        LoggerWindow.info(replay.getName() + " wasn't changed by the tasks, it was kept as is");
+    }
+
+    /**
+     * Run the tasks on the recording without writing anything, to find out if the replay has to be rewritten
+     *
+     * @param replayIndex   The index of the replay, used for the progress bar
+     * @param interpreter   The interpreter of the current thread
+     * @param zipReader     The original replay
+     * @param metaData      The replay's metadata
+     * @return              true if a task changes, adds or removes a packet
+     */
+    private boolean isRecordingChanged(int replayIndex, PSLInterpreter interpreter, ZipReader zipReader, ReplayMetaData metaData) throws IOException {
+        try (DataReader reader = new DataReader(zipReader.getEntryAsStream("recording.tmcpr"))) {
+            return editRecording(replayIndex, interpreter, metaData, reader, null);
+        }
+    }
+
+    /**
+     * Close the zip files of a replay, and delete the edited replay if it wasn't finished
+     *
+     * @param zipReader     The original replay, or null if it wasn't opened
+     * @param zipWriter     The edited replay, or null if it wasn't created
+     */
+    private void closeZips(ZipReader zipReader, ZipWriter zipWriter) {
+        if (zipReader != null) {
+            try {
+                zipReader.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        if (zipWriter != null) {
+            zipWriter.discard();
+        }
+    }
+
+    /**
+     * Read the whole recording, apply the tasks on the packets they accept and write the result
+     *
+     * @param replayIndex   The index of the replay being edited, used for the progress bar
+     * @param interpreter   The interpreter of the current thread
+     * @param metaData      The replay's metadata
+     * @param reader        The reader to read the recording from
+     * @param writer        The writer to write the edited recording to, or null to only find out if the tasks change it
+     * @return              true if a task changed, added or removed a packet.
+     *                      Without a writer, this returns as soon as a packet is changed
+     */
+    private boolean editRecording(int replayIndex, PSLInterpreter interpreter, ReplayMetaData metaData, DataReader reader, DataWriter writer) {
+        Protocol protocol = metaData.getProtocol();
+
+        // the login packets are never given to the tasks
+        RecordingUtils.copyLoginRecords(reader, writer, protocol);
+
+        boolean isChanged = false;
+
+        // the packets to write for the current record. the tasks can add
+        // packets to it or remove the packet they're editing from it.
+        // it's emptied after each record, so it's reused for the whole recording
+        Queue<Packet> packets = new ArrayDeque<>();
+
+        // since 1.20.2, the recording goes through the configuration state before the play state
+        boolean isConfiguration = protocol.getFeatures().hasConfigurationState();
+        int finishConfigurationPacketId = isConfiguration
+                ? Packets.get("finish_configuration").getConfigurationPacketId(protocol)
+                : -1;
+
+        TaskDispatcher dispatcher = new TaskDispatcher(this.tasks, protocol, isConfiguration);
+        while (reader.hasNext()) {
+            int timestamp = reader.readInt();
+            int packetSize = reader.readInt();
+            int packetId = reader.readVarIntRaw();
+            int packetIdLength = reader.getLastVarIntSize();
+
+            setReplayProgress(replayIndex, timestamp, metaData.getDuration());
+
+            List<AbstractTask> tasks = dispatcher.getTasks(packetId);
+
+            Packet packet = null;
+            if (!tasks.isEmpty()) {
+                packet = new Packet(protocol, new VarInt(packetId), isConfiguration);
+                packet.setPacketName(Packets.get(protocol, packetId, isConfiguration).getName());
+
+                if (this.lazyDecoding) {
+                    packet.setRequiredFields(dispatcher.getRequiredFields(packetId));
+                }
+
+                // we keep the packet's body, so it can
+                // be written as is if no task changes it
+                byte[] body = reader.readFollowingBytes(packetSize - packetIdLength);
+                boolean isDecoded = deserializePacket(interpreter, packet, body);
+                packet.setRawData(body);
+
+                // the packet is decoded and queued once, and every task edits that same packet
+                packets.add(packet);
+
+                // a half decoded packet can't be given to the tasks, it's written as it was
+                if (isDecoded) {
+                    for (AbstractTask task : tasks) {
+                        task.execute(packet, packets);
+                    }
+                }
+
+                // the record is the same as in the recording only if it still holds that single, untouched packet
+                if (packets.size() != 1 || packets.peek() != packet || packet.isModified() || packet.isPatched()) {
+                    isChanged = true;
+                }
+            }
+
+            if (writer == null) {
+                // nothing is written, we only want to know if the recording is changed
+                if (isChanged) {
+                    return true;
+                }
+
+                packets.clear();
+                if (packet == null) {
+                    reader.skip(packetSize - packetIdLength);
+                }
+            } else if (packet == null) {
+                // no task touched the packet, so we stream it straight to the output
+                RecordingUtils.copyRecord(reader, writer, timestamp, packetSize, packetId, packetIdLength);
+            } else {
+                writePackets(interpreter, timestamp, packets, writer);
+            }
+
+            if (isConfiguration && packetId == finishConfigurationPacketId) {
+                isConfiguration = false;
+                dispatcher.setConfiguration(false);
+            }
         }
+
+        return isChanged;
     }
 
-    private void writePackets(final int timestamp, final Queue<Packet> packets, final DataWriter writer) {
+    /**
+     * Set the progress of a single replay, and update
+     * the progress bar with the progress of all the replays
+     *
+     * @param replayIndex   The index of the replay
+     * @param timestamp     The timestamp we're at in the replay
+     * @param duration      The duration of the replay
+     */
+    private void setReplayProgress(int replayIndex, int timestamp, int duration) {
+        int progress = (duration <= 0) ? 0 : (int) Math.min((long) timestamp * PROGRESS_STEPS / duration, PROGRESS_STEPS);
+
+        // we only update the progress bar when the progress changed enough for it to be visible
+        int oldProgress = this.replayProgress.getAndSet(replayIndex, progress);
+        if (oldProgress == progress) {
+            return;
+        }
+
+        long total = this.totalProgress.addAndGet(progress - oldProgress);
+        this.progressListener.setProgress((float) total / ((float) PROGRESS_STEPS * this.replays.size()));
+    }
+
+    private void updateBatchLabel() {
+        this.progressListener.setLabel("Editing replays (" + this.editedReplays.get() + "/" + this.replays.size() + ")...");
+    }
+
+    private void writePackets(final PSLInterpreter interpreter, final int timestamp, final Queue<Packet> packets, final DataWriter writer) {
         while (!packets.isEmpty()) {
             writePacket(
+                    interpreter,
                     timestamp,
                     packets.poll(),
                     writer
@@ -183,61 +595,146 @@ public class TaskExecutor {
         }
     }
 
-    private void writePacket(final int timestamp, final Packet packet, final DataWriter recordingWriter) {
-        try (DataWriter writer = new DataWriter()) {
-            this.interpreter.set("writer", writer);
-            this.interpreter.set("packet", packet);
+    private void writePacket(final PSLInterpreter interpreter, final int timestamp, final Packet packet, final DataWriter recordingWriter) {
+        if (!packet.isModified()) {
+            // the packet is the same as in the recording, so we don't need its write script
+            writeRawPacket(timestamp, packet, recordingWriter);
+            return;
+        }
 
-            this.interpreter.source(Packets.getPSLWritePath(
-                    packet.getProtocol(),
-                    packet.getPacketId().get()
-            ));
+        DataWriter writer = new DataWriter();
+        try {
+            serializePacket(interpreter, packet, writer);
+        } catch (Exception e) {
+            if (packet.getRawData() == null) {
+                // the packet was created by a task, so there's nothing to fall back to
+                throw new IllegalStateException("Could not write " + packet.getPacketName(), e);
+            }
 
-            recordingWriter.writeInt(timestamp);
-            recordingWriter.writeInt(writer.getData().size() + packet.getPacketId().size());
-            recordingWriter.writeVarInt(packet.getPacketId().get());
-            recordingWriter.writeByteList(writer.getData());
-        } catch (IOException | EvalError e) {
+            LoggerWindow.error("Could not write " + packet.getPacketName() + ", it is kept as it was: " + e);
             e.printStackTrace();
+
+            writeRawPacket(timestamp, packet, recordingWriter);
+            return;
         }
+
+        // errors from the recording's writer are not caught, they stop the edit of the replay
+        recordingWriter.writeInt(timestamp);
+        recordingWriter.writeInt(writer.size() + packet.getPacketId().size());
+        recordingWriter.writeVarInt(packet.getPacketId().get());
+        writer.writeTo(recordingWriter);
     }
 
-    private void deserializePacket(Packet packet) {
-        try {
-            this.interpreter.source(Packets.getPSLReadPath(
-                    packet.getProtocol(),
-                    packet.getPacketId().get()
-            ));
-        } catch (IOException | EvalError e) {
-            e.printStackTrace();
+    private void writeRawPacket(final int timestamp, final Packet packet, final DataWriter recordingWriter) {
+        recordingWriter.writeInt(timestamp);
+        recordingWriter.writeInt(packet.getRawData().length + packet.getPacketId().size());
+        recordingWriter.writeVarInt(packet.getPacketId().get());
+        recordingWriter.writeBytes(packet.getRawData(), 0, packet.getRawData().length);
+    }
+
+    /**
+     * Run the packet's write script
+     *
+     * @param interpreter   The interpreter of the current thread
+     * @param packet        The packet to write
+     * @param writer        The writer to write the packet's body to
+     */
+    private void serializePacket(final PSLInterpreter interpreter, final Packet packet, final DataWriter writer) throws Exception {
+        if (packet.getDecodedLength() != -1) {
+            // the write script can write bytes between two fields, like a length or a constant,
+            // so we can't tell where the raw tail starts in what it writes. a modified packet
+            // is decoded entirely instead, the raw tail only stays for unmodified packets
+            Packet decodedPacket = packet.cloneEmpty();
+            runReadScript(interpreter, decodedPacket, new DataReader(packet.getRawData()));
+
+            packet.completeDecoding(decodedPacket);
+        }
+
+        String scriptPath = Packets.getPSLWritePath(
+                packet.getProtocol(),
+                packet.getPacketId().get(),
+                packet.isConfigurationPacket()
+        );
+
+        PacketCodec codec = getCodec(scriptPath);
+        if (codec != null) {
+            codec.execute(null, writer, packet);
+        } else {
+            interpreter.set("writer", writer);
+            interpreter.set("packet", packet);
+            interpreter.execute(scriptPath);
         }
     }
 
-    private void ignoreLoginSuccess(final DataReader reader, final DataWriter writer) {
-        VarInt packetId;
+    /**
+     * Run the packet's read script
+     *
+     * @param interpreter   The interpreter of the current thread
+     * @param packet        The packet to decode
+     * @param body          The packet's body, without the packet id
+     * @return              true if the packet could be decoded, false if its read script failed
+     */
+    private boolean deserializePacket(final PSLInterpreter interpreter, final Packet packet, final byte[] body) {
+        if (!packet.needsDecoding()) {
+            // the tasks don't need any field, the packet stays raw
+            packet.setDecodedLength(0);
+            return true;
+        }
 
-        do {
-            // timestamp
-            writer.writeInt(reader.readInt());
+        DataReader reader = new DataReader(body);
 
-            int size = reader.readInt();
-            writer.writeInt(size);
+        try {
+            runReadScript(interpreter, packet, reader);
+        } catch (DecodingStoppedException e) {
+            // all the fields the tasks need are decoded, the rest stays raw
+            packet.setDecodedLength((int) reader.getPosition());
+        } catch (Exception e) {
+            LoggerWindow.error("Could not read " + packet.getPacketName() + ", it is kept as it was: " + e);
+            e.printStackTrace();
 
-            packetId = reader.readVarInt();
-            writer.writeVarInt(packetId.get());
+            return false;
+        }
 
-            writer.writeByteArray(reader.readFollowingBytes(size - packetId.size()));
-        } while (packetId.get() != 0x02); // todo: not hardcode 0x02
+        return true;
     }
 
-    private void returnUserControl() {
-        // reset the progress bar back to 0%
-        this.progressBar.setProgress(0f);
+    /**
+     * Decode the packet with its read script
+     *
+     * @param interpreter   The interpreter of the current thread
+     * @param packet        The packet to decode
+     * @param reader        The reader on the packet's body
+     */
+    private void runReadScript(final PSLInterpreter interpreter, final Packet packet, final DataReader reader) throws Exception {
+        packet.setDecodingReader(reader);
+
+        String scriptPath = Packets.getPSLReadPath(
+                packet.getProtocol(),
+                packet.getPacketId().get(),
+                packet.isConfigurationPacket()
+        );
+
+        PacketCodec codec = getCodec(scriptPath);
+        if (codec != null) {
+            codec.execute(reader, null, packet);
+        } else {
+            interpreter.set("reader", reader);
+            interpreter.set("packet", packet);
+            interpreter.execute(scriptPath);
+        }
+    }
 
-        // hide the progress bar at the end of the edit
-        this.progressBar.setVisible(false);
+    /**
+     * Get the compiled version of a PSL script
+     *
+     * @param scriptPath    The path to the PSL script
+     * @return              The compiled script, or null if it has to be run with BeanShell
+     */
+    private PacketCodec getCodec(final String scriptPath) {
+        if (!this.compiledCodecs) {
+            return null;
+        }
 
-        // enable the user inputs we disabled
-        ImGui.getIO().removeConfigFlags(ImGuiConfigFlags.NavNoCaptureKeyboard | ImGuiConfigFlags.NoMouse);
+        return PSLCompiler.getCodec(scriptPath);
     }
 }
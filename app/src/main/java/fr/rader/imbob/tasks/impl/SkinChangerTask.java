@@ -7,7 +7,6 @@ import fr.rader.imbob.packets.PacketAcceptor;
 import fr.rader.imbob.packets.Packets;
 import fr.rader.imbob.packets.data.DataBlock;
 import fr.rader.imbob.packets.data.DataBlockArray;
-import fr.rader.imbob.protocol.ProtocolVersion;
 import fr.rader.imbob.tasks.AbstractTask;
 import fr.rader.imbob.tasks.annotations.Task;
 import fr.rader.imbob.types.VarInt;
@@ -32,18 +31,16 @@ public class SkinChangerTask extends AbstractTask {
     private final ImString fetchValue;
 
     private String[] cachedSkinData;
-    private boolean hasSkinBeenChanged;
 
     public SkinChangerTask() {
         this.targetUsername = new ImString();
         this.fetchValue = new ImString();
-        this.hasSkinBeenChanged = false;
 
         acceptPacket(PacketAcceptor.accept(Packets.get("player_info")));
     }
 
     private void edit761(final Packet packet) {
-        int actionBitfield = packet.get("action", Integer.class);
+        int actionBitfield = packet.getInt("action");
 
         // we only edit packets with the ACTION_ADD_PLAYER action because
         // the other actions don't have the textures property field
@@ -52,9 +49,7 @@ public class SkinChangerTask extends AbstractTask {
         }
 
         // we get the skin data from mojang's servers
-        if (this.cachedSkinData == null) {
-            this.cachedSkinData = MojangAPI.getSkinData(this.fetchValue.get());
-        }
+        String[] skinData = getSkinData();
 
         DataBlockArray players = packet.get("actions", DataBlockArray.class);
         for (DataBlock action : players) {
@@ -69,7 +64,7 @@ public class SkinChangerTask extends AbstractTask {
             }
 
             // if the user doesn't exist, we print an error message and return
-            if (this.cachedSkinData == null) {
+            if (skinData == null) {
                 LoggerWindow.error("User \"" + this.fetchValue.get() + "\" does not exist.");
                 return;
             }
@@ -77,30 +72,28 @@ public class SkinChangerTask extends AbstractTask {
             DataBlockArray properties = action.get("properties", DataBlockArray.class);
 
             // we look through each properties for the textures property
-            properties.forEach(property -> {
+            boolean hasSkinBeenChanged = false;
+            for (DataBlock property : properties) {
                 if (property.get("name", String.class).equals("textures")) {
-                    property.get("value").setValue(this.cachedSkinData[0]);
-                    property.get("signature").setValue(this.cachedSkinData[1]);
+                    property.get("value").setValue(skinData[0]);
+                    property.get("signature").setValue(skinData[1]);
 
-                    this.hasSkinBeenChanged = true;
+                    hasSkinBeenChanged = true;
                 }
-            });
+            }
 
-            if (!this.hasSkinBeenChanged) {
+            if (!hasSkinBeenChanged) {
                 DataBlock texturesEntryList = properties.create();
                 texturesEntryList.add("name", "textures");
-                texturesEntryList.add("value", this.cachedSkinData[0]);
+                texturesEntryList.add("value", skinData[0]);
                 texturesEntryList.add("is_signed", true);
-                texturesEntryList.add("signature", this.cachedSkinData[1]);
+                texturesEntryList.add("signature", skinData[1]);
             }
         }
-
-        // resetting the boolean to false so we're prepared for a possible next edit
-        this.hasSkinBeenChanged = false;
     }
 
     private void edit(final Packet packet) {
-        int action = packet.get("action", VarInt.class).get();
+        int action = packet.getInt("action");
 
         // we only edit packets with the ACTION_ADD_PLAYER action because
         // the other actions don't have the textures property field
@@ -109,9 +102,7 @@ public class SkinChangerTask extends AbstractTask {
         }
 
         // we get the skin data from mojang's servers
-        if (this.cachedSkinData == null) {
-            this.cachedSkinData = MojangAPI.getSkinData(this.fetchValue.get());
-        }
+        String[] skinData = getSkinData();
 
         DataBlockArray players = packet.get("players", DataBlockArray.class);
         for (DataBlock player : players) {
@@ -122,7 +113,7 @@ public class SkinChangerTask extends AbstractTask {
             }
 
             // if the user doesn't exist, we print an error message and return
-            if (this.cachedSkinData == null) {
+            if (skinData == null) {
                 LoggerWindow.error("User \"" + this.fetchValue.get() + "\" does not exist.");
                 return;
             }
@@ -130,40 +121,66 @@ public class SkinChangerTask extends AbstractTask {
             DataBlockArray properties = player.get("properties", DataBlockArray.class);
 
             // we look through each properties for the textures property
-            properties.forEach(property -> {
+            boolean hasSkinBeenChanged = false;
+            for (DataBlock property : properties) {
                 if (property.get("name", String.class).equals("textures")) {
-                    property.get("value").setValue(this.cachedSkinData[0]);
-                    property.get("signature").setValue(this.cachedSkinData[1]);
+                    property.get("value").setValue(skinData[0]);
+                    property.get("signature").setValue(skinData[1]);
 
-                    this.hasSkinBeenChanged = true;
+                    hasSkinBeenChanged = true;
                 }
-            });
+            }
 
-            if (!this.hasSkinBeenChanged) {
+            if (!hasSkinBeenChanged) {
                 DataBlock texturesEntryList = properties.create();
                 texturesEntryList.add("name", "textures");
-                texturesEntryList.add("value", this.cachedSkinData[0]);
+                texturesEntryList.add("value", skinData[0]);
                 texturesEntryList.add("is_signed", true);
-                texturesEntryList.add("signature", this.cachedSkinData[1]);
+                texturesEntryList.add("signature", skinData[1]);
 
                 VarInt numberOfProperties = player.get("number_of_properties", VarInt.class);
                 numberOfProperties.set(numberOfProperties.get() + 1);
             }
         }
+    }
+
+    /**
+     * Get the skin data from mojang's servers, only once.
+     * This is synchronized because multiple replays can be edited at the same time
+     *
+     * @return  The skin data, see {@link MojangAPI#getSkinData(String)}
+     */
+    private synchronized String[] getSkinData() {
+        if (this.cachedSkinData == null) {
+            this.cachedSkinData = MojangAPI.getSkinData(this.fetchValue.get());
+        }
 
-        // resetting the boolean to false so we're prepared for a possible next edit
-        this.hasSkinBeenChanged = false;
+        return this.cachedSkinData;
     }
 
     @Override
     protected void execute(Packet packet, Queue<Packet> packets) {
-        if (packet.getProtocol().isAfterInclusive(ProtocolVersion.getInstance().get("MC_1_19_3"))) {
+        if (packet.getFeatures().hasPlayerInfoActionBitfield()) {
             edit761(packet);
         } else {
             edit(packet);
         }
     }
 
+    /**
+     * Set the players, without using the user interface
+     *
+     * @param targetUsername    The username of the player whose skin is changed
+     * @param skinPlayer        The username of the player that has the new skin
+     */
+    public synchronized void setPlayers(String targetUsername, String skinPlayer) {
+        this.targetUsername.set(targetUsername);
+        this.fetchValue.set(skinPlayer);
+
+        // the skin we fetched belongs to the old player
+        this.cachedSkinData = null;
+    }
+
     @Override
     public void render() {
         ImGui.inputText("Target", this.targetUsername);
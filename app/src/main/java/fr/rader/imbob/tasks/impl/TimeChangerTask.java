@@ -26,14 +26,14 @@ public class TimeChangerTask extends AbstractTask {
     public TimeChangerTask() {
         this.timeOfDay = new ImInt(NOON);
 
-        acceptPacket(PacketAcceptor.accept(Packets.get("time_update")));
+        acceptPacket(PacketAcceptor.accept(Packets.get("time_update")).fields("time_of_day"));
         // we accept the Join Game packet starting from MC 1.16 because
         // it's at this version that the Join Game packet contains the
         // fixed time field if the world/server has the doDaylightCycle gamerule set to false
-        acceptPacket(PacketAcceptor.accept(Packets.get("join_game")).from(ProtocolVersion.getInstance().get("MC_1_16")));
+        acceptPacket(PacketAcceptor.accept(Packets.get("join_game")).from(ProtocolVersion.getInstance().get("MC_1_16")).fields("dimension_codec"));
 
         // on 1.20.2+, the dimension codec has been moved to a packet
-        acceptPacket(PacketAcceptor.accept(Packets.get("registry_data"), true).from(ProtocolVersion.getInstance().get("MC_1_20_2")));
+        acceptPacket(PacketAcceptor.accept(Packets.get("registry_data"), true).from(ProtocolVersion.getInstance().get("MC_1_20_2")).fields("registry_codec"));
     }
 
     @Override
@@ -43,13 +43,15 @@ public class TimeChangerTask extends AbstractTask {
 
         switch (packet.getPacketName()) {
             case "time_update": {
-                // changing the time just means we need to change the time of day entry
-                packet.update("time_of_day", -newTimeOfDay);
+                // changing the time just means we need to change the time of day entry.
+                // it's a long, so it's overwritten in the packet instead of writing the whole packet again
+                packet.patchLong("time_of_day", -newTimeOfDay);
                 break;
             }
 
             case "join_game": {
-                if (packet.getProtocol().isAfterInclusive(ProtocolVersion.getInstance().get("MC_1_20_2"))) {
+                // on 1.20.2+, the dimension codec is in the registry_data packet
+                if (!packet.getFeatures().hasJoinGameDimensionCodec()) {
                     return;
                 }
 
@@ -58,6 +60,7 @@ public class TimeChangerTask extends AbstractTask {
                 // by adding or editing the "fixed_time" field
                 TagCompound dimensionCodecCompound = packet.get("dimension_codec", TagCompound.class);
                 patchDimensionCodec(dimensionCodecCompound, newTimeOfDay);
+                packet.markModified();
 
                 break;
             }
@@ -69,6 +72,7 @@ public class TimeChangerTask extends AbstractTask {
 
                 TagCompound registryCodec = packet.get("registry_codec", TagCompound.class);
                 patchDimensionCodec(registryCodec, newTimeOfDay);
+                packet.markModified();
 
                 break;
             }
@@ -91,6 +95,15 @@ public class TimeChangerTask extends AbstractTask {
         }
     }
 
+    /**
+     * Set the time of day, without using the user interface
+     *
+     * @param timeOfDay     The time of day, in ticks, between 0 and 24000
+     */
+    public void setTimeOfDay(int timeOfDay) {
+        this.timeOfDay.set(MathUtils.clamp(timeOfDay, 0, TICKS_PER_DAY));
+    }
+
     @Override
     public void render() {
         // we clamp the value between 0 and 24000 ticks
@@ -8,10 +8,8 @@ import fr.rader.imbob.packets.Packets;
 import fr.rader.imbob.packets.data.Data;
 import fr.rader.imbob.packets.data.DataBlock;
 import fr.rader.imbob.packets.data.DataBlockArray;
-import fr.rader.imbob.protocol.ProtocolVersion;
 import fr.rader.imbob.tasks.AbstractTask;
 import fr.rader.imbob.tasks.annotations.Task;
-import fr.rader.imbob.types.VarInt;
 import imgui.ImGui;
 import imgui.type.ImString;
 
@@ -32,7 +30,7 @@ public class UsernameChangerTask extends AbstractTask {
     }
 
     private void edit761(final Packet packet) {
-        int actionBitfield = packet.get("action", Integer.class);
+        int actionBitfield = packet.getInt("action");
 
         if ((actionBitfield & ACTION_ADD_PLAYER_BIT) == 0) {
             return;
@@ -53,7 +51,7 @@ public class UsernameChangerTask extends AbstractTask {
     }
 
     private void edit(final Packet packet) {
-        int action = packet.get("action", VarInt.class).get();
+        int action = packet.getInt("action");
 
         if (action != ACTION_ADD_PLAYER) {
             return;
@@ -71,13 +69,24 @@ public class UsernameChangerTask extends AbstractTask {
 
     @Override
     protected void execute(Packet packet, Queue<Packet> packets) {
-        if (packet.getProtocol().isAfterInclusive(ProtocolVersion.getInstance().get("MC_1_19_3"))) {
+        if (packet.getFeatures().hasPlayerInfoActionBitfield()) {
             edit761(packet);
         } else {
             edit(packet);
         }
     }
 
+    /**
+     * Set the usernames, without using the user interface
+     *
+     * @param targetUsername    The username of the player to rename
+     * @param newUsername       The player's new username
+     */
+    public void setUsernames(String targetUsername, String newUsername) {
+        this.targetUsername.set(targetUsername);
+        this.newUsername.set(newUsername);
+    }
+
     @Override
     public void render() {
         ImGui.inputText("Target Username", this.targetUsername);
@@ -31,11 +31,12 @@ public class WeatherChangerTask extends AbstractTask {
     public WeatherChangerTask() {
         this.selectedWeather = new ImInt(0);
 
-        acceptPacket(PacketAcceptor.accept(Packets.get("change_game_state")));
+        acceptPacket(PacketAcceptor.accept(Packets.get("change_game_state")).fields("reason"));
         // we accept the Join Game packet because we will insert a few
         // Change Game State packets after it if the user decides
         // to change the weather to either rain or thunder
-        acceptPacket(PacketAcceptor.accept(Packets.get("join_game")));
+        // we don't need any of its fields, so it's not decoded
+        acceptPacket(PacketAcceptor.accept(Packets.get("join_game")).fields());
     }
 
     @Override
@@ -92,7 +93,7 @@ public class WeatherChangerTask extends AbstractTask {
 
             case "change_game_state":
                 // we get the Change Game State packet's reason entry
-                int reason = packet.get("reason", Integer.class);
+                int reason = packet.getInt("reason");
 
                 // we return if the packet doesn't affect the weather
                 if (
@@ -106,11 +107,27 @@ public class WeatherChangerTask extends AbstractTask {
 
                 // otherwise, we just remove the packet from
                 // the queue so it doesn't get written
-                packets.poll();
+                packets.remove(packet);
                 break;
         }
     }
 
+    /**
+     * Set the new weather, without using the user interface
+     *
+     * @param weather   The new weather, either "Clear", "Rain" or "Thunder"
+     */
+    public void setWeather(String weather) {
+        for (int i = 0; i < WEATHERS.length; i++) {
+            if (WEATHERS[i].equalsIgnoreCase(weather)) {
+                this.selectedWeather.set(i);
+                return;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown weather: " + weather);
+    }
+
     @Override
     public void render() {
         ImGui.pushItemWidth(150);
@@ -17,6 +17,44 @@ public class Position {
         this.z = z;
     }
 
+    /**
+     * Pack coordinates in a long, as they are sent by the protocol
+     *
+     * @param hasYLast  true if the Y coordinate is in the lowest bits, this is the case since 1.14
+     * @return          The packed position
+     */
+    public static long pack(int x, int y, int z, boolean hasYLast) {
+        if (hasYLast) {
+            return ((long) (x & 0x3ffffff) << 38) |
+                    ((long) (z & 0x3ffffff) << 12) |
+                    (y & 0xfff);
+        }
+
+        return ((long) (x & 0x3ffffff) << 38) |
+                ((long) (y & 0xfff) << 26) |
+                (z & 0x3ffffff);
+    }
+
+    public static int unpackX(long packed) {
+        return (int) (packed >> 38);
+    }
+
+    public static int unpackY(long packed, boolean hasYLast) {
+        if (hasYLast) {
+            return (int) (packed << 52 >> 52);
+        }
+
+        return (int) (packed >> 26) & 0xfff;
+    }
+
+    public static int unpackZ(long packed, boolean hasYLast) {
+        if (hasYLast) {
+            return (int) (packed << 26 >> 38);
+        }
+
+        return (int) (packed << 38 >> 38);
+    }
+
     public Protocol getProtocol() {
         return this.protocolVersion;
     }
@@ -38,21 +38,28 @@ public class PSLUpdater {
         this.localVersion = INVALID_VERSION;
     }
 
-    public void update() {
+    /**
+     * Download the latest PSL scripts if there's a new version.
+     * It's up to the caller to stop when the scripts can't be downloaded
+     *
+     * @return  false if the PSL scripts couldn't be downloaded
+     */
+    public boolean update() {
         if (!isUpdateAvailable()) {
             // if we're here and the local version or the github version is -1, this means we don't have internet
             if (this.localVersion == INVALID_VERSION && this.githubVersion == INVALID_VERSION) {
                 System.out.println("Cannot download files!");
-                System.exit(0);
+                return false;
             }
 
-            return;
+            return true;
         }
 
         removeOldFiles();
         downloadUpdate();
 
         this.hasBeenUpdated = true;
+        return true;
     }
 
     public void removeOldFiles() {
@@ -6,18 +6,36 @@ import fr.rader.imbob.types.VarLong;
 import fr.rader.imbob.types.nbt.TagCompound;
 import fr.rader.imbob.windows.impl.LoggerWindow;
 import fr.rader.imbob.protocol.Protocol;
-import fr.rader.imbob.protocol.ProtocolVersion;
 
 import java.io.*;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.util.UUID;
 
 public class DataReader implements AutoCloseable {
 
+    private static final int BUFFER_SIZE = 65536;
+
+    /**
+     * This is the window of bytes read ahead from the input stream.
+     * The position is the next byte to read, and the limit
+     * is the end of the bytes we read from the stream
+     */
+    private final ByteBuffer buffer;
+
     private InputStream inputStream;
 
+    /** The position in the stream of the first byte of the buffer */
+    private long bufferStart = 0;
+
+    private boolean reachedEndOfStream = false;
+
+    /** The amount of bytes the last VarInt took */
+    private int lastVarIntSize;
+
     public DataReader(File file) {
+        this.buffer = createBuffer();
+
         if (file == null) {
             LoggerWindow.error("File is null!");
             return;
@@ -41,6 +59,8 @@ public class DataReader implements AutoCloseable {
     }
 
     public DataReader(InputStream inputStream) {
+        this.buffer = createBuffer();
+
         if (inputStream == null) {
             LoggerWindow.error("InputStream is null!");
             return;
@@ -49,46 +69,55 @@ public class DataReader implements AutoCloseable {
         this.inputStream = inputStream;
     }
 
+    /**
+     * Read from an array instead of a stream.
+     * The array isn't copied, so it must not be changed while it's being read
+     *
+     * @param data  The bytes to read
+     */
+    public DataReader(byte[] data) {
+        this.buffer = ByteBuffer.wrap(data);
+        this.reachedEndOfStream = true;
+    }
+
     public boolean readBoolean() {
         return readByte() != 0;
     }
 
     public int readByte() {
-        if (this.inputStream == null) {
-            throw new IllegalStateException("InputStream is null!");
-        }
-
-        try {
-            if (this.inputStream.available() == 0) {
-                throw new EOFException("Reached end of file!");
-            }
+        require(1);
 
-            return this.inputStream.read() & 0xFF;
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        return 0;
+        return this.buffer.get() & 0xFF;
     }
 
     public int readShort() {
-        return (readByte() << 8 | readByte()) & 0xffff;
+        require(2);
+
+        return this.buffer.getShort() & 0xffff;
     }
 
     public int readInt() {
-        return readShort() << 16 | readShort();
+        require(4);
+
+        return this.buffer.getInt();
     }
 
     public long readLong() {
-        return (long) readInt() << 32 | readInt() & 0xffffffffL;
+        require(8);
+
+        return this.buffer.getLong();
     }
 
     public float readFloat() {
-        return ByteBuffer.wrap(readFollowingBytes(4)).order(ByteOrder.BIG_ENDIAN).getFloat();
+        require(4);
+
+        return this.buffer.getFloat();
     }
 
     public double readDouble() {
-        return ByteBuffer.wrap(readFollowingBytes(8)).order(ByteOrder.BIG_ENDIAN).getDouble();
+        require(8);
+
+        return this.buffer.getDouble();
     }
 
     public char readChar() {
@@ -97,15 +126,84 @@ public class DataReader implements AutoCloseable {
 
     public byte[] readFollowingBytes(int length) {
         byte[] out = new byte[length];
+        readFully(out, 0, length);
+
+        return out;
+    }
 
-        for (int i = 0; i < length; i++) {
-            out[i] = (byte) readByte();
+    /**
+     * Read exactly {@code length} bytes into the given array.
+     * Big reads bypass the internal buffer and go straight to the stream
+     *
+     * @param out       The array to fill
+     * @param offset    The index of the first byte to write in the array
+     * @param length    The amount of bytes to read
+     */
+    public void readFully(byte[] out, int offset, int length) {
+        // we first empty what's left in the buffer
+        int buffered = Math.min(length, this.buffer.remaining());
+        this.buffer.get(out, offset, buffered);
+        offset += buffered;
+        length -= buffered;
+
+        while (length > 0) {
+            // if what's left is bigger than the buffer,
+            // there's no point in copying it twice
+            if (length >= this.buffer.capacity()) {
+                int read = readFromStream(out, offset, length);
+                if (read == -1) {
+                    throw endOfFile();
+                }
+
+                this.bufferStart += read;
+                offset += read;
+                length -= read;
+                continue;
+            }
+
+            require(1);
+
+            int chunk = Math.min(length, this.buffer.remaining());
+            this.buffer.get(out, offset, chunk);
+            offset += chunk;
+            length -= chunk;
         }
+    }
 
-        return out;
+    /**
+     * Copy the next {@code length} bytes to the given writer without decoding
+     * them, straight from the internal buffer and without allocating anything
+     *
+     * @param writer    The writer to copy the bytes to
+     * @param length    The amount of bytes to copy
+     */
+    public void transferTo(DataWriter writer, int length) {
+        while (length > 0) {
+            require(1);
+
+            int chunk = Math.min(length, this.buffer.remaining());
+            writer.writeBytes(
+                    this.buffer.array(),
+                    this.buffer.arrayOffset() + this.buffer.position(),
+                    chunk
+            );
+
+            this.buffer.position(this.buffer.position() + chunk);
+            length -= chunk;
+        }
     }
 
     public VarInt readVarInt() {
+        return new VarInt(readVarIntRaw());
+    }
+
+    /**
+     * Read a VarInt without creating a {@link VarInt}.
+     * The amount of bytes it took is then given by {@link DataReader#getLastVarIntSize()}
+     *
+     * @return  The value of the VarInt
+     */
+    public int readVarIntRaw() {
         int bytesRead = 0;
         int result = 0;
         int read;
@@ -121,10 +219,31 @@ public class DataReader implements AutoCloseable {
             }
         } while ((read & 0x80) != 0);
 
-        return new VarInt(result);
+        this.lastVarIntSize = bytesRead;
+
+        return result;
+    }
+
+    /**
+     * Get the amount of bytes the last VarInt read by {@link DataReader#readVarIntRaw()} took.
+     * This can be more than the VarInt's minimal size, if it has been padded
+     *
+     * @return  The size of the last VarInt read
+     */
+    public int getLastVarIntSize() {
+        return this.lastVarIntSize;
     }
 
     public VarLong readVarLong() {
+        return new VarLong(readVarLongRaw());
+    }
+
+    /**
+     * Read a VarLong without creating a {@link VarLong}
+     *
+     * @return  The value of the VarLong
+     */
+    public long readVarLongRaw() {
         int numRead = 0;
         long result = 0;
         int read;
@@ -140,28 +259,31 @@ public class DataReader implements AutoCloseable {
             }
         } while ((read & 0x80) != 0);
 
-        return new VarLong(result);
+        return result;
     }
 
     public String readString() {
-        return readString(readVarInt().get());
+        return readString(readVarIntRaw());
     }
 
     public String readString(int length) {
-        StringBuilder out = new StringBuilder();
-
-        for (int i = 0; i < length; i++) {
-            out.append(readChar());
-        }
-
-        return out.toString();
+        // each byte is a character, ISO-8859-1 maps them one to one
+        return new String(readFollowingBytes(length), StandardCharsets.ISO_8859_1);
     }
 
     public int[] readIntArray(int length) {
         int[] out = new int[length];
 
-        for (int i = 0; i < length; i++) {
-            out[i] = readInt();
+        int index = 0;
+        while (index < length) {
+            require(4);
+
+            // we decode as many ints as the buffer currently holds in one go
+            int count = Math.min(length - index, this.buffer.remaining() / 4);
+            this.buffer.asIntBuffer().get(out, index, count);
+            this.buffer.position(this.buffer.position() + count * 4);
+
+            index += count;
         }
 
         return out;
@@ -170,8 +292,16 @@ public class DataReader implements AutoCloseable {
     public long[] readLongArray(int length) {
         long[] out = new long[length];
 
-        for (int i = 0; i < length; i++) {
-            out[i] = readLong();
+        int index = 0;
+        while (index < length) {
+            require(8);
+
+            // we decode as many longs as the buffer currently holds in one go
+            int count = Math.min(length - index, this.buffer.remaining() / 8);
+            this.buffer.asLongBuffer().get(out, index, count);
+            this.buffer.position(this.buffer.position() + count * 8);
+
+            index += count;
         }
 
         return out;
@@ -196,58 +326,169 @@ public class DataReader implements AutoCloseable {
     }
 
     public UUID readUUID() {
-        ByteBuffer byteBuffer = ByteBuffer.wrap(readFollowingBytes(16));
-        return new UUID(byteBuffer.getLong(), byteBuffer.getLong());
+        require(16);
+
+        return new UUID(this.buffer.getLong(), this.buffer.getLong());
     }
 
     public Position readPosition(Protocol protocolVersion) {
-        long positionValue = readLong();
-
-        int x;
-        int y;
-        int z;
-
-        if (protocolVersion.isBeforeExclusive(ProtocolVersion.getInstance().get("MC_1_14"))) {
-            x = (int) (positionValue >> 38);
-            y = (int) (positionValue >> 26) & 0xfff;
-            z = (int) (positionValue << 38 >> 38);
-        } else {
-            x = (int) (positionValue >> 38);
-            y = (int) (positionValue << 52 >> 52);
-            z = (int) (positionValue << 38 >> 38);
-        }
+        long positionValue = readPackedPosition();
+        boolean hasYLast = protocolVersion.getFeatures().hasYLastPosition();
+
+        return new Position(
+                protocolVersion,
+                Position.unpackX(positionValue),
+                Position.unpackY(positionValue, hasYLast),
+                Position.unpackZ(positionValue, hasYLast)
+        );
+    }
 
-        return new Position(protocolVersion, x, y, z);
+    /**
+     * Read a position without creating a {@link Position}.
+     * It can be decoded with {@link Position#unpackX(long)},
+     * {@link Position#unpackY(long, boolean)} and {@link Position#unpackZ(long, boolean)}
+     *
+     * @return  The packed position
+     */
+    public long readPackedPosition() {
+        return readLong();
     }
 
+    /**
+     * Check if there's still data to read. Unlike {@link InputStream#available()},
+     * this only returns false once the end of the stream has actually been reached
+     *
+     * @return  true if at least one more byte can be read, false otherwise
+     */
     public boolean hasNext() {
+        return fill(1);
+    }
+
+    public int getLength() {
+        int length = this.buffer.remaining();
+        if (this.inputStream == null || this.reachedEndOfStream) {
+            return length;
+        }
+
         try {
-            return this.inputStream.available() > 0;
+            return length + this.inputStream.available();
         } catch (IOException e) {
             e.printStackTrace();
         }
 
-        return false;
+        return length;
     }
 
-    public int getLength() {
+    /**
+     * Get the amount of bytes read so far
+     *
+     * @return  The position of the next byte to read in the stream
+     */
+    public long getPosition() {
+        return this.bufferStart + this.buffer.position();
+    }
+
+    public void skip(int length) {
+        while (length > 0) {
+            require(1);
+
+            int chunk = Math.min(length, this.buffer.remaining());
+            this.buffer.position(this.buffer.position() + chunk);
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Make sure the buffer holds at least {@code length} bytes
+     *
+     * @param length    The amount of bytes we need, this cannot be bigger than the buffer
+     * @throws UncheckedIOException if the end of the stream is reached before
+     */
+    private void require(int length) {
+        if (!fill(length)) {
+            throw endOfFile();
+        }
+    }
+
+    /**
+     * Read more data from the stream if the buffer holds less than {@code length} bytes.
+     *
+     * @param length    The amount of bytes we need, this cannot be bigger than the buffer
+     * @return          true if the buffer holds at least {@code length} bytes, false
+     *                  if the end of the stream has been reached before that
+     */
+    private boolean fill(int length) {
+        if (this.buffer.remaining() >= length) {
+            return true;
+        }
+
+        if (this.reachedEndOfStream) {
+            return false;
+        }
+
+        if (this.inputStream == null) {
+            throw new IllegalStateException("InputStream is null!");
+        }
+
+        // we move the bytes we didn't read yet to the start
+        // of the buffer and we append the new data after them
+        this.bufferStart += this.buffer.position();
+        this.buffer.compact();
+
         try {
-            return this.inputStream.available();
-        } catch (IOException e) {
-            e.printStackTrace();
+            while (this.buffer.position() < length) {
+                int read = readFromStream(
+                        this.buffer.array(),
+                        this.buffer.arrayOffset() + this.buffer.position(),
+                        this.buffer.remaining()
+                );
+
+                if (read == -1) {
+                    break;
+                }
+
+                this.buffer.position(this.buffer.position() + read);
+            }
+        } finally {
+            this.buffer.flip();
         }
 
-        return 0;
+        return this.buffer.remaining() >= length;
     }
 
-    public void skip(int i) {
+    private int readFromStream(byte[] out, int offset, int length) {
+        if (this.reachedEndOfStream) {
+            return -1;
+        }
+
         try {
-            this.inputStream.skip(i);
+            int read;
+            do {
+                read = this.inputStream.read(out, offset, length);
+            } while (read == 0);
+
+            if (read == -1) {
+                this.reachedEndOfStream = true;
+            }
+
+            return read;
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new UncheckedIOException(e);
         }
     }
 
+    private static UncheckedIOException endOfFile() {
+        return new UncheckedIOException(new EOFException("Reached end of file!"));
+    }
+
+    private static ByteBuffer createBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        // the buffer starts empty
+        buffer.limit(0);
+
+        return buffer;
+    }
+
     @Override
     public void close() throws IOException {
         if (this.inputStream == null) {
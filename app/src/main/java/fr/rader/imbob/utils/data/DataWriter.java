@@ -1,6 +1,5 @@
 package fr.rader.imbob.utils.data;
 
-import fr.rader.imbob.protocol.ProtocolVersion;
 import fr.rader.imbob.types.Position;
 import fr.rader.imbob.types.VarInt;
 import fr.rader.imbob.types.nbt.TagCompound;
@@ -8,42 +7,38 @@ import fr.rader.imbob.types.nbt.TagCompound;
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 
 public class DataWriter implements AutoCloseable {
 
     private static final int BUFFER_SIZE = 16384;
-
-    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private static final int INITIAL_MEMORY_SIZE = 256;
 
     private final OutputStream outputStream;
 
-    private final List<Byte> data;
+    /**
+     * When writing to an {@link OutputStream}, this is a fixed size buffer that gets written to the stream once full.
+     * When writing in memory, this is the data itself and it grows when it's full
+     */
+    private byte[] buffer;
 
     private int index = 0;
 
-    // use internal list
+    // write to a growable internal buffer
     public DataWriter() {
         this.outputStream = null;
-        this.data = new ArrayList<>();
+        this.buffer = new byte[INITIAL_MEMORY_SIZE];
     }
 
     public DataWriter(OutputStream outputStream) {
         this.outputStream = outputStream;
-        this.data = null;
+        this.buffer = new byte[BUFFER_SIZE];
     }
 
     public void writeByte(int value) {
-        if (this.data != null) {
-            this.data.add((byte) (value & 0xff));
-            return;
-        }
-
-        if (this.index == BUFFER_SIZE) {
-            flush();
-        }
+        ensureCapacity(1);
 
         this.buffer[this.index] = (byte) (value & 0xff);
         this.index++;
@@ -54,13 +49,21 @@ public class DataWriter implements AutoCloseable {
     }
 
     public void writeShort(int value) {
-        writeByte(value >>> 8);
-        writeByte(value & 0xff);
+        ensureCapacity(2);
+
+        this.buffer[this.index]     = (byte) (value >>> 8);
+        this.buffer[this.index + 1] = (byte) value;
+        this.index += 2;
     }
 
     public void writeInt(int value) {
-        writeShort(value >>> 16);
-        writeShort(value & 0xffff);
+        ensureCapacity(4);
+
+        this.buffer[this.index]     = (byte) (value >>> 24);
+        this.buffer[this.index + 1] = (byte) (value >>> 16);
+        this.buffer[this.index + 2] = (byte) (value >>> 8);
+        this.buffer[this.index + 3] = (byte) value;
+        this.index += 4;
     }
 
     public void writeLong(long value) {
@@ -69,9 +72,35 @@ public class DataWriter implements AutoCloseable {
     }
 
     public void writeByteArray(byte[] values) {
-        for (byte value : values) {
-            writeByte(value);
+        writeBytes(values, 0, values.length);
+    }
+
+    /**
+     * Write {@code length} bytes from the given array in one go
+     *
+     * @param values    The array containing the bytes to write
+     * @param offset    The index of the first byte to write
+     * @param length    The amount of bytes to write
+     */
+    public void writeBytes(byte[] values, int offset, int length) {
+        if (this.outputStream != null && length > this.buffer.length) {
+            // there's no point in copying a big array in
+            // the buffer, so we write it straight to the stream
+            drainBuffer();
+
+            try {
+                this.outputStream.write(values, offset, length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            return;
         }
+
+        ensureCapacity(length);
+
+        System.arraycopy(values, offset, this.buffer, this.index, length);
+        this.index += length;
     }
 
     public void writeByteList(List<Byte> values) {
@@ -99,11 +128,11 @@ public class DataWriter implements AutoCloseable {
     }
 
     public void writeFloat(float value) {
-        writeByteArray(ByteBuffer.allocate(4).putFloat(value).array());
+        writeInt(Float.floatToRawIntBits(value));
     }
 
     public void writeDouble(double value) {
-        writeByteArray(ByteBuffer.allocate(8).putDouble(value).array());
+        writeLong(Double.doubleToRawLongBits(value));
     }
 
     public void writeVarInt(final VarInt value) {
@@ -123,6 +152,23 @@ public class DataWriter implements AutoCloseable {
         } while (value != 0);
     }
 
+    /**
+     * Write a VarInt using exactly {@code length} bytes.
+     * This is used to write back VarInts that were padded with empty groups
+     * byte for byte, as {@link DataWriter#writeVarInt(int)} always uses the shortest form
+     *
+     * @param value     The value to write
+     * @param length    The amount of bytes to use, at least {@link VarInt#size()}
+     */
+    public void writeVarInt(int value, int length) {
+        for (int i = 1; i < length; i++) {
+            writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+
+        writeByte(value & 0x7f);
+    }
+
     public void writeVarLong(long value) {
         do {
             byte temp = (byte) (value & 0x7f);
@@ -155,19 +201,12 @@ public class DataWriter implements AutoCloseable {
     }
 
     public void writePosition(Position position) {
-        if (position.getProtocol().isBeforeExclusive(ProtocolVersion.getInstance().get("MC_1_14"))) {
-            writeLong(
-                    ((long) (position.getX() & 0x3ffffff) << 38) |
-                    ((long) (position.getY() & 0xfff) << 26) |
-                    (position.getZ() & 0x3ffffff)
-            );
-        } else {
-            writeLong(
-                    ((long) (position.getX() & 0x3ffffff) << 38) |
-                    ((long) (position.getZ() & 0x3ffffff) << 12) |
-                    (position.getY() & 0xfff)
-            );
-        }
+        writeLong(Position.pack(
+                position.getX(),
+                position.getY(),
+                position.getZ(),
+                position.getProtocol().getFeatures().hasYLastPosition()
+        ));
     }
 
     public void flush() {
@@ -175,24 +214,105 @@ public class DataWriter implements AutoCloseable {
             return;
         }
 
+        drainBuffer();
+
         try {
-            this.outputStream.write(this.buffer, 0, this.index);
             this.outputStream.flush();
-
-            this.index = 0;
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new UncheckedIOException(e);
         }
     }
 
-    public List<Byte> getData() {
-        return this.data;
+    /**
+     * Write everything this in-memory writer holds to another writer, in a single copy
+     *
+     * @param writer    The writer to copy the data to
+     */
+    public void writeTo(DataWriter writer) {
+        checkInMemory();
+
+        writer.writeBytes(this.buffer, 0, this.index);
+    }
+
+    /**
+     * Get a read-only view of the data written so far.
+     * The view is backed by the internal buffer, so it
+     * must not be used after writing more data
+     *
+     * @return  A read-only {@link ByteBuffer} of the data
+     */
+    public ByteBuffer asByteBuffer() {
+        checkInMemory();
+
+        return ByteBuffer.wrap(this.buffer, 0, this.index).asReadOnlyBuffer();
+    }
+
+    public byte[] toByteArray() {
+        checkInMemory();
+
+        return Arrays.copyOf(this.buffer, this.index);
+    }
+
+    /**
+     * Get the amount of bytes written in memory
+     *
+     * @return  The amount of bytes this in-memory writer holds
+     */
+    public int size() {
+        checkInMemory();
+
+        return this.index;
+    }
+
+    /**
+     * Forget everything that has been written in memory so the writer can be reused
+     */
+    public void reset() {
+        checkInMemory();
+
+        this.index = 0;
     }
 
     public int index() {
         return this.index;
     }
 
+    /**
+     * Write the buffer to the stream, without flushing the stream.
+     * This is done every time the buffer is full, so flushing
+     * the stream is left to the ones calling {@link DataWriter#flush()}
+     */
+    private void drainBuffer() {
+        try {
+            this.outputStream.write(this.buffer, 0, this.index);
+
+            this.index = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void ensureCapacity(int length) {
+        if (this.buffer.length - this.index >= length) {
+            return;
+        }
+
+        if (this.outputStream != null) {
+            drainBuffer();
+            return;
+        }
+
+        // we at least double the size of the buffer so growing stays cheap
+        int newLength = Math.max(this.buffer.length * 2, this.index + length);
+        this.buffer = Arrays.copyOf(this.buffer, newLength);
+    }
+
+    private void checkInMemory() {
+        if (this.outputStream != null) {
+            throw new IllegalStateException("DataWriter is not writing in memory!");
+        }
+    }
+
     @Override
     public void close() throws IOException {
         if (this.outputStream != null) {
@@ -0,0 +1,235 @@
+package fr.rader.imbob.utils.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded pipe between two threads.<br>
+ * The data goes through a fixed ring of chunks: the writing side fills free chunks
+ * and hands them to the reading side, which gives them back once they're read.
+ * Once all the chunks are in use, the writing side waits for the reading side,
+ * so the memory used by the pipe never grows.<br>
+ * If one side fails, it can call {@link ChunkPipe#fail(Throwable)} so the other side stops too.
+ */
+public class ChunkPipe {
+
+    private static final long POLL_TIMEOUT_MS = 100;
+
+    /** This chunk is sent once the writing side is closed */
+    private static final Chunk END_OF_STREAM = new Chunk(0);
+
+    private final BlockingQueue<Chunk> freeChunks;
+    private final BlockingQueue<Chunk> filledChunks;
+
+    private final PipeInputStream inputStream;
+    private final PipeOutputStream outputStream;
+
+    private volatile Throwable failure;
+
+    public ChunkPipe(int chunkSize, int chunkCount) {
+        this.freeChunks = new ArrayBlockingQueue<>(chunkCount);
+        // one more slot so the end of stream marker always fits
+        this.filledChunks = new ArrayBlockingQueue<>(chunkCount + 1);
+
+        for (int i = 0; i < chunkCount; i++) {
+            this.freeChunks.add(new Chunk(chunkSize));
+        }
+
+        this.inputStream = new PipeInputStream();
+        this.outputStream = new PipeOutputStream();
+    }
+
+    public InputStream getInputStream() {
+        return this.inputStream;
+    }
+
+    public OutputStream getOutputStream() {
+        return this.outputStream;
+    }
+
+    /**
+     * Stop the pipe because one side failed.
+     * Any further read or write will throw an {@link IOException} with the given cause
+     *
+     * @param cause     The reason why the pipe failed
+     */
+    public void fail(Throwable cause) {
+        if (this.failure == null) {
+            this.failure = cause;
+        }
+    }
+
+    private Chunk take(BlockingQueue<Chunk> queue) throws IOException {
+        try {
+            while (true) {
+                checkFailure();
+
+                // we don't block forever so we can notice if the other side failed
+                Chunk chunk = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (chunk != null) {
+                    return chunk;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the pipe");
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (this.failure != null) {
+            throw new IOException("The other side of the pipe failed", this.failure);
+        }
+    }
+
+    private static class Chunk {
+
+        private final byte[] data;
+        private int length;
+
+        private Chunk(int size) {
+            this.data = new byte[size];
+        }
+    }
+
+    private class PipeInputStream extends InputStream {
+
+        private Chunk current;
+        private int position;
+
+        private boolean isClosed = false;
+
+        @Override
+        public int read() throws IOException {
+            if (!nextChunk()) {
+                return -1;
+            }
+
+            return this.current.data[this.position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] out, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+
+            if (!nextChunk()) {
+                return -1;
+            }
+
+            int read = Math.min(length, this.current.length - this.position);
+            System.arraycopy(this.current.data, this.position, out, offset, read);
+            this.position += read;
+
+            return read;
+        }
+
+        @Override
+        public int available() {
+            if (this.current == null) {
+                return 0;
+            }
+
+            return this.current.length - this.position;
+        }
+
+        /**
+         * Make sure the current chunk has something to read,
+         * giving back the read chunks to the writing side
+         *
+         * @return  false if the writing side is closed and everything has been read
+         */
+        private boolean nextChunk() throws IOException {
+            if (this.isClosed) {
+                return false;
+            }
+
+            while (this.current == null || this.position == this.current.length) {
+                if (this.current != null) {
+                    ChunkPipe.this.freeChunks.add(this.current);
+                    this.current = null;
+                }
+
+                Chunk chunk = take(ChunkPipe.this.filledChunks);
+                if (chunk == END_OF_STREAM) {
+                    this.isClosed = true;
+                    return false;
+                }
+
+                this.current = chunk;
+                this.position = 0;
+            }
+
+            return true;
+        }
+    }
+
+    private class PipeOutputStream extends OutputStream {
+
+        private Chunk current;
+
+        private boolean isClosed = false;
+
+        @Override
+        public void write(int value) throws IOException {
+            write(new byte[] { (byte) value }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] values, int offset, int length) throws IOException {
+            if (this.isClosed) {
+                throw new IOException("Pipe is closed");
+            }
+
+            while (length > 0) {
+                if (this.current == null) {
+                    this.current = take(ChunkPipe.this.freeChunks);
+                    this.current.length = 0;
+                }
+
+                int written = Math.min(length, this.current.data.length - this.current.length);
+                System.arraycopy(values, offset, this.current.data, this.current.length, written);
+                this.current.length += written;
+                offset += written;
+                length -= written;
+
+                // we only hand full chunks to the reading side
+                if (this.current.length == this.current.data.length) {
+                    sendCurrent();
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            checkFailure();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.isClosed) {
+                return;
+            }
+
+            if (this.current != null && this.current.length > 0) {
+                sendCurrent();
+            }
+
+            this.isClosed = true;
+            ChunkPipe.this.filledChunks.add(END_OF_STREAM);
+        }
+
+        private void sendCurrent() throws IOException {
+            checkFailure();
+
+            ChunkPipe.this.filledChunks.add(this.current);
+            this.current = null;
+        }
+    }
+}
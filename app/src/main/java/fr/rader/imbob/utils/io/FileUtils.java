@@ -2,6 +2,16 @@ package fr.rader.imbob.utils.io;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
 
 import fr.rader.imbob.windows.impl.LoggerWindow;
 
@@ -60,4 +70,68 @@ public class FileUtils {
         // returning the newly-created file
         return file;
     }
+
+    /**
+     * Find the files matching a glob, like {@code replays/*.mcpr} or {@code replays/**.mcpr}.
+     * A path without glob characters is returned as is, unless it's a folder:
+     * the .mcpr files in the folder are returned instead
+     *
+     * @param glob  The glob to match, relative to the working directory or absolute
+     * @return      The matching files, sorted by path
+     * @throws IOException if the folders couldn't be listed
+     */
+    public static List<File> findFiles(String glob) throws IOException {
+        String[] segments = glob.replace('\\', '/').split("/", -1);
+
+        // the base folder is everything before the first segment with a glob character
+        int firstGlobSegment = 0;
+        while (firstGlobSegment < segments.length && !isGlob(segments[firstGlobSegment])) {
+            firstGlobSegment++;
+        }
+
+        String pattern;
+        int maxDepth;
+        Path base;
+        if (firstGlobSegment == segments.length) {
+            File file = new File(glob);
+            if (!file.isDirectory()) {
+                return file.isFile() ? Collections.singletonList(file) : Collections.emptyList();
+            }
+
+            base = file.toPath();
+            pattern = "*.mcpr";
+            maxDepth = 1;
+        } else {
+            base = Paths.get(firstGlobSegment == 0 ? "." : String.join("/", Arrays.copyOfRange(segments, 0, firstGlobSegment)) + "/");
+            pattern = String.join("/", Arrays.copyOfRange(segments, firstGlobSegment, segments.length));
+            // a ** can cross folders, otherwise there's one folder per segment
+            maxDepth = pattern.contains("**") ? Integer.MAX_VALUE : segments.length - firstGlobSegment;
+        }
+
+        if (!Files.isDirectory(base)) {
+            return Collections.emptyList();
+        }
+
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+
+        List<File> files = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(base, maxDepth)) {
+            paths.filter(Files::isRegularFile)
+                    .filter(path -> matcher.matches(base.relativize(path)))
+                    .sorted()
+                    .forEach(path -> files.add(path.toFile()));
+        }
+
+        return files;
+    }
+
+    private static boolean isGlob(String segment) {
+        for (char c : segment.toCharArray()) {
+            if (c == '*' || c == '?' || c == '[' || c == '{') {
+                return true;
+            }
+        }
+
+        return false;
+    }
 }
@@ -0,0 +1,399 @@
+package fr.rader.imbob.utils.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Deflates a stream on multiple threads, like pigz does.<br>
+ * The data is split in blocks that are deflated independently on a shared pool of threads.
+ * Each block is primed with the last 32 KiB of the block before it, so it compresses almost as well
+ * as a single stream. The blocks end with a sync flush, so they can be put one after the other,
+ * and the last one ends the deflate stream.<br>
+ * The output is raw deflate data, without zlib or gzip header, like in zip entries.
+ * The crc and the size of the uncompressed data are computed along the way.
+ */
+public class ParallelDeflaterOutputStream extends OutputStream {
+
+    static final int BLOCK_SIZE = 128 * 1024;
+    /** The deflate window, nothing further back can be referenced */
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private static final int THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+    /** The blocks waiting to be deflated or written, for all the streams together. This bounds the memory used */
+    static final int MAX_BLOCKS_IN_FLIGHT = THREAD_COUNT * 2;
+    private static final Semaphore BLOCKS_IN_FLIGHT = new Semaphore(MAX_BLOCKS_IN_FLIGHT);
+
+    /** The threads are shared by all the streams, so editing replays at the same time doesn't start more threads */
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(THREAD_COUNT, new DeflaterThreadFactory());
+
+    /**
+     * Deflaters are expensive to create, so they're reused by all the blocks.
+     * There's one queue per compression level, from {@link Deflater#DEFAULT_COMPRESSION} to 9
+     */
+    private static final Queue<Deflater>[] DEFLATERS = createDeflaterQueues();
+
+    private final OutputStream out;
+    private final int level;
+
+    /** The blocks being deflated, in order */
+    private final Queue<Future<Block>> blocks;
+
+    private byte[] buffer;
+    private int bufferLength;
+
+    /** The end of the previous block, to prime the next one */
+    private byte[] dictionary;
+
+    private long crc;
+    private long size;
+
+    private boolean isFinished = false;
+
+    /**
+     * @param out       The stream to write the deflated data to
+     * @param level     The compression level, from 0 to 9, or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public ParallelDeflaterOutputStream(OutputStream out, int level) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        }
+
+        this.out = out;
+        this.level = level;
+        this.blocks = new ArrayDeque<>();
+        this.buffer = new byte[BLOCK_SIZE];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (this.isFinished) {
+            throw new IOException("The stream has already been finished");
+        }
+
+        while (len > 0) {
+            int length = Math.min(len, BLOCK_SIZE - this.bufferLength);
+            System.arraycopy(b, off, this.buffer, this.bufferLength, length);
+
+            this.bufferLength += length;
+            off += length;
+            len -= length;
+
+            if (this.bufferLength == BLOCK_SIZE) {
+                submitBlock(false);
+            }
+        }
+    }
+
+    /**
+     * Write the blocks that are already deflated, without waiting for the others.
+     * The data that doesn't fill a block yet stays buffered, until the block is full or the stream is finished
+     */
+    @Override
+    public void flush() throws IOException {
+        while (!this.blocks.isEmpty() && this.blocks.peek().isDone()) {
+            writeNextBlock();
+        }
+
+        this.out.flush();
+    }
+
+    /**
+     * Deflate the remaining data and end the deflate stream, without closing the underlying stream
+     */
+    public void finish() throws IOException {
+        if (this.isFinished) {
+            return;
+        }
+
+        // the last block ends the deflate stream, even if it's empty
+        submitBlock(true);
+        this.isFinished = true;
+
+        while (!this.blocks.isEmpty()) {
+            writeNextBlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        this.out.close();
+    }
+
+    /**
+     * Drop the blocks that haven't been written yet, when the stream won't be finished.
+     * The other streams can then use the room they took
+     */
+    public void discard() {
+        this.isFinished = true;
+
+        while (!this.blocks.isEmpty()) {
+            this.blocks.poll().cancel(false);
+            BLOCKS_IN_FLIGHT.release();
+        }
+    }
+
+    /**
+     * @return  The crc32 of the data written so far, up to the last written block
+     */
+    public long getCrc() {
+        return this.crc;
+    }
+
+    /**
+     * @return  The size of the uncompressed data written so far, up to the last written block
+     */
+    public long getSize() {
+        return this.size;
+    }
+
+    private void submitBlock(boolean isLast) throws IOException {
+        acquireBlock();
+
+        Block block = new Block(this.buffer, this.bufferLength, this.dictionary, isLast);
+        this.blocks.add(POOL.submit(() -> block.deflate(this.level)));
+
+        // the end of this block primes the next one
+        if (this.bufferLength >= DICTIONARY_SIZE) {
+            this.dictionary = Arrays.copyOfRange(this.buffer, this.bufferLength - DICTIONARY_SIZE, this.bufferLength);
+        }
+
+        this.buffer = new byte[BLOCK_SIZE];
+        this.bufferLength = 0;
+    }
+
+    /**
+     * Wait for room for one more block, so the streams don't get too far ahead of the deflaters
+     */
+    private void acquireBlock() throws IOException {
+        while (!BLOCKS_IN_FLIGHT.tryAcquire()) {
+            if (this.blocks.isEmpty()) {
+                // the other streams have all the blocks, they give them back as they write them
+                try {
+                    BLOCKS_IN_FLIGHT.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting to deflate");
+                }
+
+                return;
+            }
+
+            // we don't wait for the other streams while we hold blocks, they could be waiting for ours
+            writeNextBlock();
+        }
+    }
+
+    private void writeNextBlock() throws IOException {
+        Block block;
+        try {
+            block = this.blocks.poll().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while deflating");
+        } catch (ExecutionException e) {
+            throw new IOException("Could not deflate a block", e.getCause());
+        } finally {
+            BLOCKS_IN_FLIGHT.release();
+        }
+
+        this.out.write(block.output, 0, block.outputLength);
+
+        this.crc = combineCrc(this.crc, block.crc, block.length);
+        this.size += block.length;
+    }
+
+    private static Deflater acquireDeflater(int level) {
+        Deflater deflater = DEFLATERS[level + 1].poll();
+        if (deflater == null) {
+            return new Deflater(level, true);
+        }
+
+        return deflater;
+    }
+
+    private static void releaseDeflater(Deflater deflater, int level) {
+        deflater.reset();
+        DEFLATERS[level + 1].add(deflater);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Queue<Deflater>[] createDeflaterQueues() {
+        Queue<Deflater>[] queues = new Queue[Deflater.BEST_COMPRESSION + 2];
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new ConcurrentLinkedQueue<>();
+        }
+
+        return queues;
+    }
+
+    /**
+     * Get the crc32 of two pieces of data put one after the other,
+     * from the crc32 of each piece. This is crc32_combine from zlib
+     *
+     * @param crc1      The crc32 of the first piece
+     * @param crc2      The crc32 of the second piece
+     * @param length2   The length of the second piece
+     * @return          The crc32 of both pieces
+     */
+    static long combineCrc(long crc1, long crc2, long length2) {
+        if (length2 <= 0) {
+            return crc1;
+        }
+
+        // the operator for one zero bit, then two and four zero bits
+        long[] even = new long[32];
+        long[] odd = new long[32];
+
+        odd[0] = 0xEDB88320L;
+        long row = 1;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+
+        squareMatrix(even, odd);
+        squareMatrix(odd, even);
+
+        // we apply length2 zero bytes to crc1, squaring the operator for each bit of length2
+        do {
+            squareMatrix(even, odd);
+            if ((length2 & 1) != 0) {
+                crc1 = multiplyMatrix(even, crc1);
+            }
+
+            length2 >>= 1;
+            if (length2 == 0) {
+                break;
+            }
+
+            squareMatrix(odd, even);
+            if ((length2 & 1) != 0) {
+                crc1 = multiplyMatrix(odd, crc1);
+            }
+
+            length2 >>= 1;
+        } while (length2 != 0);
+
+        return crc1 ^ crc2;
+    }
+
+    private static long multiplyMatrix(long[] matrix, long vector) {
+        long sum = 0;
+        for (int i = 0; vector != 0; i++, vector >>>= 1) {
+            if ((vector & 1) != 0) {
+                sum ^= matrix[i];
+            }
+        }
+
+        return sum;
+    }
+
+    private static void squareMatrix(long[] square, long[] matrix) {
+        for (int n = 0; n < 32; n++) {
+            square[n] = multiplyMatrix(matrix, matrix[n]);
+        }
+    }
+
+    private static class Block {
+
+        private final byte[] input;
+        private final int length;
+        private final byte[] dictionary;
+        private final boolean isLast;
+
+        private byte[] output;
+        private int outputLength;
+        private long crc;
+
+        private Block(byte[] input, int length, byte[] dictionary, boolean isLast) {
+            this.input = input;
+            this.length = length;
+            this.dictionary = dictionary;
+            this.isLast = isLast;
+        }
+
+        private Block deflate(int level) {
+            CRC32 crc = new CRC32();
+            crc.update(this.input, 0, this.length);
+            this.crc = crc.getValue();
+
+            // deflated data is rarely bigger than its input, the output grows if it is
+            this.output = new byte[this.length + (this.length >> 3) + 64];
+
+            Deflater deflater = acquireDeflater(level);
+            try {
+                if (this.dictionary != null) {
+                    deflater.setDictionary(this.dictionary);
+                }
+
+                deflater.setInput(this.input, 0, this.length);
+
+                if (this.isLast) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        deflate(deflater, Deflater.NO_FLUSH);
+                    }
+                } else {
+                    // a sync flush ends the block on a byte boundary without ending the stream,
+                    // it has to be called again as long as it fills the output
+                    while (deflate(deflater, Deflater.SYNC_FLUSH)) {
+                        // the output was full
+                    }
+                }
+            } finally {
+                releaseDeflater(deflater, level);
+            }
+
+            return this;
+        }
+
+        /**
+         * @return  true if the output was filled
+         */
+        private boolean deflate(Deflater deflater, int flush) {
+            if (this.outputLength == this.output.length) {
+                this.output = Arrays.copyOf(this.output, this.output.length * 2);
+            }
+
+            int space = this.output.length - this.outputLength;
+            int written = deflater.deflate(this.output, this.outputLength, space, flush);
+            this.outputLength += written;
+
+            return written == space;
+        }
+    }
+
+    private static class DeflaterThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "ImBob deflater " + this.threadCount.incrementAndGet());
+            // the pool is never shut down, it mustn't keep the application running
+            thread.setDaemon(true);
+
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package fr.rader.imbob.utils.zip;
+
+import java.util.Locale;
+import java.util.zip.Deflater;
+
+/**
+ * How the {@link ZipWriter} compresses the entries it writes.<br>
+ * Entries can be deflated with a given level, stored without compression,
+ * or compressed like the entry they replace in the original zip file.
+ */
+public final class CompressionPolicy {
+
+    /** The entries are stored if the original entry was stored, and deflated with the default level otherwise */
+    public static final CompressionPolicy MATCH_ORIGINAL = new CompressionPolicy(true, false, Deflater.DEFAULT_COMPRESSION);
+    /** The entries are stored without any compression */
+    public static final CompressionPolicy STORE = new CompressionPolicy(false, true, Deflater.NO_COMPRESSION);
+
+    private final boolean matchesOriginal;
+    private final boolean stores;
+    private final int level;
+
+    private CompressionPolicy(boolean matchesOriginal, boolean stores, int level) {
+        this.matchesOriginal = matchesOriginal;
+        this.stores = stores;
+        this.level = level;
+    }
+
+    /**
+     * Deflate the entries with the given level
+     *
+     * @param level     The compression level, from 0 to 9, or {@link Deflater#DEFAULT_COMPRESSION}
+     * @return          The compression policy
+     */
+    public static CompressionPolicy level(int level) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        }
+
+        return new CompressionPolicy(false, false, level);
+    }
+
+    /**
+     * Get a compression policy from its name: "original", "store", or a level from 0 to 9
+     *
+     * @param name  The name of the policy
+     * @return      The compression policy
+     * @throws IllegalArgumentException if the name isn't a compression policy
+     */
+    public static CompressionPolicy parse(String name) {
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "original":
+                return MATCH_ORIGINAL;
+
+            case "store":
+                return STORE;
+
+            default:
+                try {
+                    return level(Integer.parseInt(name));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid compression: " + name);
+                }
+        }
+    }
+
+    /**
+     * Check if an entry has to be stored without compression
+     *
+     * @param originalMethod    The method of the entry in the original zip file, or -1 if it's a new entry
+     * @return                  true to store the entry, false to deflate it with {@link CompressionPolicy#getLevel()}
+     */
+    boolean stores(int originalMethod) {
+        if (this.matchesOriginal) {
+            return originalMethod == ZipFormat.METHOD_STORED;
+        }
+
+        return this.stores;
+    }
+
+    /**
+     * @return  The level to deflate the entries with
+     */
+    int getLevel() {
+        return this.level;
+    }
+
+    @Override
+    public String toString() {
+        if (this.matchesOriginal) {
+            return "original";
+        }
+
+        return this.stores ? "store" : String.valueOf(this.level);
+    }
+}
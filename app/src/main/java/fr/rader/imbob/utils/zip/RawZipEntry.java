@@ -0,0 +1,75 @@
+package fr.rader.imbob.utils.zip;
+
+/**
+ * An entry as it is described in the central directory of a zip file.
+ * This is what's needed to copy the entry's compressed data to another zip file without inflating it
+ */
+final class RawZipEntry {
+
+    private final String name;
+    private final byte[] rawName;
+
+    private final int flags;
+    private final int method;
+    private final long dosTime;
+    private final long crc;
+
+    private final long compressedSize;
+    private final long size;
+
+    private final long localHeaderOffset;
+
+    RawZipEntry(String name, byte[] rawName, int flags, int method, long dosTime, long crc, long compressedSize, long size, long localHeaderOffset) {
+        this.name = name;
+        this.rawName = rawName;
+        this.flags = flags;
+        this.method = method;
+        this.dosTime = dosTime;
+        this.crc = crc;
+        this.compressedSize = compressedSize;
+        this.size = size;
+        this.localHeaderOffset = localHeaderOffset;
+    }
+
+    String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return  The entry's name, with the encoding it had in the zip file
+     */
+    byte[] getRawName() {
+        return this.rawName;
+    }
+
+    int getFlags() {
+        return this.flags;
+    }
+
+    int getMethod() {
+        return this.method;
+    }
+
+    /**
+     * @return  The entry's last modification time, in the MS-DOS format used by zip files
+     */
+    long getDosTime() {
+        return this.dosTime;
+    }
+
+    long getCrc() {
+        return this.crc;
+    }
+
+    long getCompressedSize() {
+        return this.compressedSize;
+    }
+
+    long getSize() {
+        return this.size;
+    }
+
+    long getLocalHeaderOffset() {
+        return this.localHeaderOffset;
+    }
+}
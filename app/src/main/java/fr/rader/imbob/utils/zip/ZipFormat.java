@@ -0,0 +1,45 @@
+package fr.rader.imbob.utils.zip;
+
+/**
+ * The records and constants of the zip format used by {@link ZipReader} and {@link ZipWriter}.
+ * All the values in a zip file are little-endian
+ */
+final class ZipFormat {
+
+    static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    static final int END_SIGNATURE = 0x06054b50;
+    static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+    static final int LOCAL_HEADER_SIZE = 30;
+    static final int CENTRAL_HEADER_SIZE = 46;
+    static final int END_SIZE = 22;
+    static final int ZIP64_END_SIZE = 56;
+    static final int ZIP64_LOCATOR_SIZE = 20;
+
+    /** The offset of the name's length in a local header */
+    static final int LOCAL_HEADER_NAME_LENGTH_OFFSET = 26;
+
+    static final int ZIP64_EXTRA_ID = 0x0001;
+
+    /** A 32 bits size or offset with this value is in the zip64 extra field */
+    static final long ZIP64_MAGIC_VALUE = 0xFFFFFFFFL;
+    /** An entry count with this value is in the zip64 end of central directory */
+    static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+    static final int VERSION = 20;
+    static final int ZIP64_VERSION = 45;
+
+    static final int METHOD_STORED = 0;
+    static final int METHOD_DEFLATED = 8;
+
+    /** The sizes and the crc are in a data descriptor after the entry's data */
+    static final int FLAG_DATA_DESCRIPTOR = 0x08;
+    /** The entry's name is encoded with UTF-8 */
+    static final int FLAG_UTF8 = 0x800;
+
+    private ZipFormat() {
+    }
+}
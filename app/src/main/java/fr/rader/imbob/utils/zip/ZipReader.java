@@ -3,14 +3,38 @@ package fr.rader.imbob.utils.zip;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
 
+import fr.rader.imbob.windows.impl.LoggerWindow;
+
 public class ZipReader extends ZipFile {
 
+    /** The biggest possible end of central directory, with a comment of 65535 bytes */
+    private static final int MAX_END_SIZE = ZipFormat.END_SIZE + 0xFFFF;
+
+    private final File zip;
+
+    /** The channel used to copy the compressed data of the entries, opened when needed */
+    private FileChannel channel;
+    /** The entries from the central directory, in the order they are in the zip file */
+    private List<RawZipEntry> rawEntries;
+
     public ZipReader(File zip) throws IOException {
         super(zip);
+
+        this.zip = zip;
     }
 
     public boolean hasEntry(String entryName) {
@@ -25,7 +49,44 @@ public class ZipReader extends ZipFile {
         return getInputStream(getEntry(entryName));
     }
 
+    /**
+     * Copy all the entries the {@link ZipWriter} doesn't have yet.
+     * The compressed data of the entries is copied as is, without inflating and deflating it again
+     *
+     * @param zipWriter     The zip writer to copy the entries to
+     */
     public void dumpToZipWriter(ZipWriter zipWriter) throws IOException {
+        dumpToZipWriter(zipWriter, true);
+    }
+
+    /**
+     * Copy all the entries the {@link ZipWriter} doesn't have yet
+     *
+     * @param zipWriter     The zip writer to copy the entries to
+     * @param rawCopy       true to copy the compressed data as is, false to inflate and deflate every entry again
+     */
+    public void dumpToZipWriter(ZipWriter zipWriter, boolean rawCopy) throws IOException {
+        if (rawCopy) {
+            List<RawZipEntry> entries;
+            try {
+                entries = getRawEntries();
+            } catch (ZipException e) {
+                // ZipFile could open it, so it's still readable the slow way
+                LoggerWindow.warn("Cannot copy the entries of " + this.zip.getName() + " as is: " + e.getMessage());
+                entries = null;
+            }
+
+            if (entries != null) {
+                for (RawZipEntry entry : entries) {
+                    if (!zipWriter.hasEntry(entry.getName())) {
+                        zipWriter.addRawEntry(entry, this);
+                    }
+                }
+
+                return;
+            }
+        }
+
         Enumeration<? extends ZipEntry> entries = entries();
 
         while (entries.hasMoreElements()) {
@@ -37,8 +98,235 @@ public class ZipReader extends ZipFile {
 
             zipWriter.addEntry(
                     entry.getName(),
-                    getInputStream(entry)
+                    getInputStream(entry),
+                    entry.getMethod()
             );
         }
     }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (this.channel != null) {
+                this.channel.close();
+            }
+        } finally {
+            super.close();
+        }
+    }
+
+    /**
+     * Copy the compressed data of an entry, without its local header
+     *
+     * @param entry     The entry to copy
+     * @param target    The channel to copy the data to
+     */
+    void transferRawData(RawZipEntry entry, WritableByteChannel target) throws IOException {
+        FileChannel channel = getChannel();
+
+        // the local header's name and extra field can be different from
+        // the central directory's, so we read their lengths from the local header
+        ByteBuffer lengths = read(channel, entry.getLocalHeaderOffset() + ZipFormat.LOCAL_HEADER_NAME_LENGTH_OFFSET, 4);
+        long position = entry.getLocalHeaderOffset()
+                + ZipFormat.LOCAL_HEADER_SIZE
+                + getUnsignedShort(lengths)
+                + getUnsignedShort(lengths);
+
+        long remaining = entry.getCompressedSize();
+        while (remaining > 0) {
+            long transferred = channel.transferTo(position, remaining, target);
+            if (transferred <= 0) {
+                throw new ZipException("Unexpected end of " + this.zip.getName() + " in " + entry.getName());
+            }
+
+            position += transferred;
+            remaining -= transferred;
+        }
+    }
+
+    /**
+     * Read the central directory, it has everything needed to copy the entries as is
+     *
+     * @return  The entries in the central directory
+     */
+    private List<RawZipEntry> getRawEntries() throws IOException {
+        if (this.rawEntries != null) {
+            return this.rawEntries;
+        }
+
+        FileChannel channel = getChannel();
+
+        long endPosition = findEnd(channel);
+        ByteBuffer end = read(channel, endPosition, ZipFormat.END_SIZE);
+        end.position(10);
+
+        long entryCount = getUnsignedShort(end);
+        long directorySize = getUnsignedInt(end);
+        long directoryOffset = getUnsignedInt(end);
+
+        if (entryCount == ZipFormat.ZIP64_MAGIC_COUNT
+                || directorySize == ZipFormat.ZIP64_MAGIC_VALUE
+                || directoryOffset == ZipFormat.ZIP64_MAGIC_VALUE) {
+            ByteBuffer zip64End = readZip64End(channel, endPosition);
+            zip64End.position(32);
+
+            entryCount = zip64End.getLong();
+            directorySize = zip64End.getLong();
+            directoryOffset = zip64End.getLong();
+        }
+
+        if (directorySize > Integer.MAX_VALUE || directoryOffset + directorySize > channel.size()) {
+            throw new ZipException("Invalid central directory");
+        }
+
+        ByteBuffer directory = read(channel, directoryOffset, (int) directorySize);
+
+        List<RawZipEntry> entries = new ArrayList<>();
+        for (long i = 0; i < entryCount; i++) {
+            entries.add(readCentralHeader(directory));
+        }
+
+        this.rawEntries = Collections.unmodifiableList(entries);
+        return this.rawEntries;
+    }
+
+    private static RawZipEntry readCentralHeader(ByteBuffer directory) throws ZipException {
+        if (directory.remaining() < ZipFormat.CENTRAL_HEADER_SIZE || directory.getInt() != ZipFormat.CENTRAL_HEADER_SIGNATURE) {
+            throw new ZipException("Invalid central directory header");
+        }
+
+        // version made by, version needed to extract
+        directory.position(directory.position() + 4);
+
+        int flags = getUnsignedShort(directory);
+        int method = getUnsignedShort(directory);
+        long dosTime = getUnsignedInt(directory);
+        long crc = getUnsignedInt(directory);
+        long compressedSize = getUnsignedInt(directory);
+        long size = getUnsignedInt(directory);
+        int nameLength = getUnsignedShort(directory);
+        int extraLength = getUnsignedShort(directory);
+        int commentLength = getUnsignedShort(directory);
+
+        // disk number, internal and external attributes
+        directory.position(directory.position() + 8);
+
+        long localHeaderOffset = getUnsignedInt(directory);
+
+        if (directory.remaining() < nameLength + extraLength + commentLength) {
+            throw new ZipException("Invalid central directory header");
+        }
+
+        byte[] rawName = new byte[nameLength];
+        directory.get(rawName);
+
+        // the values that don't fit in 32 bits are in the zip64 extra field, in this order
+        int extraEnd = directory.position() + extraLength;
+        while (directory.position() + 4 <= extraEnd) {
+            int id = getUnsignedShort(directory);
+            int length = getUnsignedShort(directory);
+            int next = directory.position() + length;
+
+            if (id == ZipFormat.ZIP64_EXTRA_ID) {
+                if (size == ZipFormat.ZIP64_MAGIC_VALUE && directory.position() + 8 <= next) {
+                    size = directory.getLong();
+                }
+
+                if (compressedSize == ZipFormat.ZIP64_MAGIC_VALUE && directory.position() + 8 <= next) {
+                    compressedSize = directory.getLong();
+                }
+
+                if (localHeaderOffset == ZipFormat.ZIP64_MAGIC_VALUE && directory.position() + 8 <= next) {
+                    localHeaderOffset = directory.getLong();
+                }
+            }
+
+            directory.position(Math.min(next, extraEnd));
+        }
+
+        directory.position(extraEnd + commentLength);
+
+        // ZipFile reads the names as UTF-8, so we do the same to find the entries by name
+        String name = new String(rawName, StandardCharsets.UTF_8);
+        return new RawZipEntry(name, rawName, flags, method, dosTime, crc, compressedSize, size, localHeaderOffset);
+    }
+
+    /**
+     * Find the end of central directory record, it's at the end of the zip file, before the zip's comment
+     *
+     * @return  The position of the end of central directory record
+     */
+    private static long findEnd(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        int length = (int) Math.min(fileSize, MAX_END_SIZE);
+        long start = fileSize - length;
+
+        ByteBuffer tail = read(channel, start, length);
+        for (int position = length - ZipFormat.END_SIZE; position >= 0; position--) {
+            if (tail.getInt(position) != ZipFormat.END_SIGNATURE) {
+                continue;
+            }
+
+            // the signature could be in the comment, so we check the comment ends with the file
+            int commentLength = tail.getShort(position + 20) & 0xFFFF;
+            if (position + ZipFormat.END_SIZE + commentLength == length) {
+                return start + position;
+            }
+        }
+
+        throw new ZipException("Cannot find the end of central directory");
+    }
+
+    private static ByteBuffer readZip64End(FileChannel channel, long endPosition) throws IOException {
+        if (endPosition < ZipFormat.ZIP64_LOCATOR_SIZE) {
+            throw new ZipException("Cannot find the zip64 end of central directory locator");
+        }
+
+        ByteBuffer locator = read(channel, endPosition - ZipFormat.ZIP64_LOCATOR_SIZE, ZipFormat.ZIP64_LOCATOR_SIZE);
+        if (locator.getInt() != ZipFormat.ZIP64_LOCATOR_SIGNATURE) {
+            throw new ZipException("Cannot find the zip64 end of central directory locator");
+        }
+
+        // disk number
+        locator.getInt();
+
+        ByteBuffer zip64End = read(channel, locator.getLong(), ZipFormat.ZIP64_END_SIZE);
+        if (zip64End.getInt(0) != ZipFormat.ZIP64_END_SIGNATURE) {
+            throw new ZipException("Invalid zip64 end of central directory");
+        }
+
+        return zip64End;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        if (position < 0 || position + length > channel.size()) {
+            throw new ZipException("Unexpected end of zip file");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new ZipException("Unexpected end of zip file");
+            }
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    private static int getUnsignedShort(ByteBuffer buffer) {
+        return buffer.getShort() & 0xFFFF;
+    }
+
+    private static long getUnsignedInt(ByteBuffer buffer) {
+        return buffer.getInt() & 0xFFFFFFFFL;
+    }
+
+    private FileChannel getChannel() throws IOException {
+        if (this.channel == null) {
+            this.channel = FileChannel.open(this.zip.toPath(), StandardOpenOption.READ);
+        }
+
+        return this.channel;
+    }
 }
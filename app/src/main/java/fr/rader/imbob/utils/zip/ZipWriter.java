@@ -1,24 +1,57 @@
 package fr.rader.imbob.utils.zip;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
+import fr.rader.imbob.utils.io.ParallelDeflaterOutputStream;
 import fr.rader.imbob.windows.impl.LoggerWindow;
 
+/**
+ * Writes a zip file to a temporary file next to its destination, which replaces the destination with {@link ZipWriter#move()}.<br>
+ * The entries are either deflated from their uncompressed data, or copied as is from another zip file
+ * with {@link ZipReader#dumpToZipWriter(ZipWriter)}. Zip64 records are written when they're needed.
+ */
 public class ZipWriter implements AutoCloseable {
 
-    private static final String TEMP_ZIP_PREFIX = "imbob-zip";
+    private static final String TEMP_ZIP_SUFFIX = ".tmp";
 
     private static final int BUFFER_SIZE = 8192;
+    private static final int OUTPUT_BUFFER_SIZE = 65536;
+
+    /** The offset of the version needed to extract in a local header */
+    private static final int LOCAL_HEADER_VERSION_OFFSET = 4;
+    /** The offset of the crc in a local header, the sizes are right after it */
+    private static final int LOCAL_HEADER_CRC_OFFSET = 14;
+    private static final int LOCAL_HEADER_SIZES_LENGTH = 12;
+    /** The size of the zip64 extra field of a local header, with both sizes */
+    private static final int ZIP64_LOCAL_EXTRA_SIZE = 20;
+    /**
+     * The padding extra field zipalign uses, readers skip it. It keeps room for
+     * the zip64 extra field in local headers that are patched once the entry is written
+     */
+    private static final int PADDING_EXTRA_ID = 0xD935;
+    private static final int PADDING_EXTRA_SIZE = 20;
 
     private final byte[] buffer = new byte[BUFFER_SIZE];
 
@@ -26,28 +59,123 @@ public class ZipWriter implements AutoCloseable {
     private final File destination;
 
     private final FileOutputStream tempZipOutputStream;
-    private final ZipOutputStream zipOutputStream;
+    /** Everything written to the zip goes through this, so we always know where we are in the file */
+    private final PositionOutputStream output;
+
+    private final Deflater deflater;
 
-    private final List<String> entries;
+    /** The entries already written, for the central directory */
+    private final List<WrittenEntry> entries;
+    private final Set<String> entryNames;
+
+    /** The entry being created by {@link ZipWriter#createEntry(String)} */
+    private WrittenEntry currentEntry;
+    private EntryOutput currentEntryOutput;
 
     private boolean isCreatingEntry = false;
+    private boolean parallelCompression = false;
+    private CompressionPolicy compressionPolicy = CompressionPolicy.MATCH_ORIGINAL;
+    private boolean isClosed = false;
+    private boolean isMoved = false;
 
     public ZipWriter(File destination) throws IOException {
         this.destination = destination;
-        this.tempZip = File.createTempFile(TEMP_ZIP_PREFIX, null);
+        // the temporary file is in the same folder as the destination,
+        // so moving it is a rename and not a copy to another file system
+        this.tempZip = File.createTempFile(
+                "." + destination.getName() + ".",
+                TEMP_ZIP_SUFFIX,
+                destination.getAbsoluteFile().getParentFile()
+        );
         this.entries = new ArrayList<>();
+        this.entryNames = new HashSet<>();
 
         this.tempZipOutputStream = new FileOutputStream(this.tempZip);
-        this.zipOutputStream = new ZipOutputStream(this.tempZipOutputStream);
+        this.output = new PositionOutputStream(new BufferedOutputStream(this.tempZipOutputStream, OUTPUT_BUFFER_SIZE));
+
+        // the deflater is reused by all the entries, with raw deflate like all zip entries
+        this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    }
+
+    /**
+     * Set whether the entries created from now on are deflated on multiple threads.
+     * This is disabled by default
+     *
+     * @param parallelCompression   true to deflate blocks of the entries on multiple threads
+     */
+    public void setParallelCompression(boolean parallelCompression) {
+        this.parallelCompression = parallelCompression;
     }
 
+    /**
+     * Set how the entries written from now on are compressed.
+     * Entries copied as is by {@link ZipReader#dumpToZipWriter(ZipWriter)} keep their compression.
+     * This is {@link CompressionPolicy#MATCH_ORIGINAL} by default
+     *
+     * @param compressionPolicy     The compression policy
+     */
+    public void setCompressionPolicy(CompressionPolicy compressionPolicy) {
+        this.compressionPolicy = compressionPolicy;
+    }
+
+    /**
+     * Start a new entry. The returned stream doesn't need to be closed,
+     * the entry ends with {@link ZipWriter#closeEntry()}
+     *
+     * @param entryName     The name of the entry
+     * @return              The stream to write the entry's uncompressed data to
+     */
     public OutputStream createEntry(String entryName) throws IOException {
-        this.zipOutputStream.putNextEntry(new ZipEntry(entryName));
-        this.entries.add(entryName);
+        return createEntry(entryName, -1);
+    }
 
+    /**
+     * Start a new entry, replacing an entry of the original zip file.
+     * The returned stream doesn't need to be closed, the entry ends with {@link ZipWriter#closeEntry()}
+     *
+     * @param entryName         The name of the entry
+     * @param originalMethod    The compression method of the entry in the original zip file, see {@link ZipEntry#getMethod()}.
+     *                          This is used by {@link CompressionPolicy#MATCH_ORIGINAL}
+     * @return                  The stream to write the entry's uncompressed data to
+     */
+    public OutputStream createEntry(String entryName, int originalMethod) throws IOException {
+        if (this.isCreatingEntry) {
+            closeEntry();
+        }
+
+        boolean stores = this.compressionPolicy.stores(originalMethod);
+
+        WrittenEntry entry = new WrittenEntry(entryName);
+        entry.dosTime = toDosTime(LocalDateTime.now());
+
+        if (stores) {
+            // stored entries can't have a data descriptor, so the local header
+            // is written now and filled once we know the sizes and the crc
+            entry.flags = ZipFormat.FLAG_UTF8;
+            entry.method = ZipFormat.METHOD_STORED;
+            writeLocalHeader(entry, LocalHeaderSizes.PATCHED);
+
+            this.currentEntryOutput = new StoredEntryOutputStream(this.output);
+        } else {
+            // the sizes and the crc aren't known yet, they're in the data descriptor
+            entry.flags = ZipFormat.FLAG_DATA_DESCRIPTOR | ZipFormat.FLAG_UTF8;
+            entry.method = ZipFormat.METHOD_DEFLATED;
+            writeLocalHeader(entry, LocalHeaderSizes.IN_DATA_DESCRIPTOR);
+
+            int level = this.compressionPolicy.getLevel();
+            if (this.parallelCompression) {
+                this.currentEntryOutput = new ParallelEntryOutputStream(this.output, level);
+            } else {
+                this.deflater.reset();
+                this.deflater.setLevel(level);
+                this.currentEntryOutput = new EntryOutputStream(this.output, this.deflater);
+            }
+        }
+
+        this.currentEntry = entry;
         this.isCreatingEntry = true;
 
-        return this.zipOutputStream;
+        return (OutputStream) this.currentEntryOutput;
     }
 
     public void closeEntry() throws IOException {
@@ -57,46 +185,639 @@ public class ZipWriter implements AutoCloseable {
         }
 
         this.isCreatingEntry = false;
-        this.zipOutputStream.closeEntry();
+
+        EntryOutput entryOutput = this.currentEntryOutput;
+        entryOutput.finish();
+
+        WrittenEntry entry = this.currentEntry;
+        entry.crc = entryOutput.getCrc();
+        entry.size = entryOutput.getSize();
+        entry.compressedSize = this.output.getPosition() - entry.dataOffset;
+
+        if (entry.method == ZipFormat.METHOD_STORED) {
+            patchLocalHeader(entry);
+        } else {
+            writeDataDescriptor(entry);
+        }
+
+        this.currentEntry = null;
+        this.currentEntryOutput = null;
     }
 
     public void addEntry(String entryName, InputStream data) throws IOException {
+        addEntry(entryName, data, -1);
+    }
+
+    /**
+     * Add an entry from its uncompressed data
+     *
+     * @param entryName         The name of the entry
+     * @param data              The uncompressed data, the stream is closed once it's read
+     * @param originalMethod    The compression method of the entry in the original zip file, or -1 if it's a new entry
+     */
+    public void addEntry(String entryName, InputStream data, int originalMethod) throws IOException {
         if (this.isCreatingEntry) {
             LoggerWindow.error("Cannot add entry when creating Entry");
             return;
         }
 
-        this.entries.add(entryName);
-        this.zipOutputStream.putNextEntry(new ZipEntry(entryName));
+        OutputStream entryOutput = createEntry(entryName, originalMethod);
 
         int dataLengthToWrite;
         while ((dataLengthToWrite = data.read(this.buffer)) > 0) {
-            this.zipOutputStream.write(this.buffer, 0, dataLengthToWrite);
+            entryOutput.write(this.buffer, 0, dataLengthToWrite);
         }
 
         data.close();
-        this.zipOutputStream.closeEntry();
+        closeEntry();
+    }
+
+    /**
+     * Add an entry from another zip file, without inflating and deflating its data again
+     *
+     * @param source    The entry to copy
+     * @param reader    The zip file the entry is in
+     */
+    void addRawEntry(RawZipEntry source, ZipReader reader) throws IOException {
+        if (this.isCreatingEntry) {
+            LoggerWindow.error("Cannot add entry when creating Entry");
+            return;
+        }
+
+        WrittenEntry entry = new WrittenEntry(source.getName(), source.getRawName());
+        // we know the sizes and the crc, so there's no data descriptor
+        entry.flags = source.getFlags() & ~ZipFormat.FLAG_DATA_DESCRIPTOR;
+        entry.method = source.getMethod();
+        entry.dosTime = source.getDosTime();
+        entry.crc = source.getCrc();
+        entry.size = source.getSize();
+        entry.compressedSize = source.getCompressedSize();
+
+        writeLocalHeader(entry, LocalHeaderSizes.KNOWN);
+
+        // the data is copied straight to the file, so everything buffered has to be written first
+        this.output.flush();
+        reader.transferRawData(source, this.tempZipOutputStream.getChannel());
+        this.output.skip(entry.compressedSize);
     }
 
     @Override
     public void close() throws IOException {
+        if (this.isClosed) {
+            return;
+        }
+
         if (this.isCreatingEntry) {
             closeEntry();
         }
 
-        this.zipOutputStream.close();
-        this.tempZipOutputStream.close();
+        this.isClosed = true;
+
+        try {
+            writeCentralDirectory();
+            this.output.flush();
+        } finally {
+            this.deflater.end();
+            this.tempZipOutputStream.close();
+        }
     }
 
+    /**
+     * Replace the destination with the zip file, once it's closed.
+     * The destination is replaced atomically when the file system allows it,
+     * so it's never left half written
+     */
     public void move() throws IOException {
-        Files.move(
-                this.tempZip.toPath(),
-                this.destination.toPath(),
-                StandardCopyOption.REPLACE_EXISTING
-        );
+        try {
+            Files.move(
+                    this.tempZip.toPath(),
+                    this.destination.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE
+            );
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(
+                    this.tempZip.toPath(),
+                    this.destination.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING
+            );
+        }
+
+        this.isMoved = true;
+    }
+
+    /**
+     * Delete the temporary file if the zip hasn't replaced its destination.
+     * This is used when writing the zip failed, so no partial zip is left next to the destination
+     */
+    public void discard() {
+        if (this.isMoved) {
+            return;
+        }
+
+        this.isClosed = true;
+        this.deflater.end();
+
+        if (this.currentEntryOutput != null) {
+            this.currentEntryOutput.discard();
+        }
+
+        try {
+            this.tempZipOutputStream.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        if (this.tempZip.exists() && !this.tempZip.delete()) {
+            LoggerWindow.warn("Could not delete " + this.tempZip.getAbsolutePath());
+        }
     }
 
     public boolean hasEntry(String entryName) {
-        return this.entries.contains(entryName);
+        return this.entryNames.contains(entryName);
+    }
+
+    /**
+     * Write the local header of an entry
+     *
+     * @param entry     The entry
+     * @param sizes     How the entry's sizes and crc are written
+     */
+    private void writeLocalHeader(WrittenEntry entry, LocalHeaderSizes sizes) throws IOException {
+        this.entries.add(entry);
+        this.entryNames.add(entry.name);
+
+        entry.localHeaderOffset = this.output.getPosition();
+
+        boolean knowsSizes = (sizes == LocalHeaderSizes.KNOWN);
+        boolean isPatched = (sizes == LocalHeaderSizes.PATCHED);
+        boolean isZip64 = knowsSizes && (entry.size >= ZipFormat.ZIP64_MAGIC_VALUE || entry.compressedSize >= ZipFormat.ZIP64_MAGIC_VALUE);
+        // we don't know yet if a patched entry needs 64 bits sizes, so we keep room for them
+        int extraLength = (isZip64 || isPatched) ? ZIP64_LOCAL_EXTRA_SIZE : 0;
+        entry.hasLocalZip64Extra = isZip64;
+        entry.hasPadding = isPatched;
+
+        ByteBuffer header = allocate(ZipFormat.LOCAL_HEADER_SIZE + entry.rawName.length + extraLength);
+        header.putInt(ZipFormat.LOCAL_HEADER_SIGNATURE);
+        header.putShort((short) (isZip64 ? ZipFormat.ZIP64_VERSION : ZipFormat.VERSION));
+        header.putShort((short) entry.flags);
+        header.putShort((short) entry.method);
+        header.putInt((int) entry.dosTime);
+
+        if (!knowsSizes) {
+            header.putInt(0);
+            header.putInt(0);
+            header.putInt(0);
+        } else {
+            header.putInt((int) entry.crc);
+            header.putInt((int) (isZip64 ? ZipFormat.ZIP64_MAGIC_VALUE : entry.compressedSize));
+            header.putInt((int) (isZip64 ? ZipFormat.ZIP64_MAGIC_VALUE : entry.size));
+        }
+
+        header.putShort((short) entry.rawName.length);
+        header.putShort((short) extraLength);
+        header.put(entry.rawName);
+
+        if (isZip64) {
+            header.putShort((short) ZipFormat.ZIP64_EXTRA_ID);
+            header.putShort((short) 16);
+            header.putLong(entry.size);
+            header.putLong(entry.compressedSize);
+        } else if (isPatched) {
+            header.putShort((short) PADDING_EXTRA_ID);
+            header.putShort((short) 16);
+            header.putLong(0);
+            header.putLong(0);
+        }
+
+        this.output.write(header.array());
+        entry.dataOffset = this.output.getPosition();
+    }
+
+    /**
+     * Fill the sizes and the crc of a local header written with {@link LocalHeaderSizes#PATCHED}.
+     * The padding extra field becomes a zip64 extra field if the entry needs 64 bits sizes
+     */
+    private void patchLocalHeader(WrittenEntry entry) throws IOException {
+        boolean isZip64 = entry.size >= ZipFormat.ZIP64_MAGIC_VALUE || entry.compressedSize >= ZipFormat.ZIP64_MAGIC_VALUE;
+        entry.hasLocalZip64Extra = isZip64;
+        entry.hasPadding = !isZip64;
+
+        ByteBuffer version = allocate(2);
+        version.putShort((short) (isZip64 ? ZipFormat.ZIP64_VERSION : ZipFormat.VERSION));
+        version.flip();
+
+        // the values of a zip64 extra field are only read when the sizes in the header are 0xFFFFFFFF
+        ByteBuffer sizes = allocate(LOCAL_HEADER_SIZES_LENGTH);
+        sizes.putInt((int) entry.crc);
+        sizes.putInt((int) (isZip64 ? ZipFormat.ZIP64_MAGIC_VALUE : entry.compressedSize));
+        sizes.putInt((int) (isZip64 ? ZipFormat.ZIP64_MAGIC_VALUE : entry.size));
+        sizes.flip();
+
+        ByteBuffer extra = allocate(ZIP64_LOCAL_EXTRA_SIZE);
+        extra.putShort((short) (isZip64 ? ZipFormat.ZIP64_EXTRA_ID : PADDING_EXTRA_ID));
+        extra.putShort((short) 16);
+        extra.putLong(isZip64 ? entry.size : 0);
+        extra.putLong(isZip64 ? entry.compressedSize : 0);
+        extra.flip();
+
+        // everything before the entry's end has to be in the file before we write over it
+        this.output.flush();
+
+        FileChannel channel = this.tempZipOutputStream.getChannel();
+        writeFully(channel, version, entry.localHeaderOffset + LOCAL_HEADER_VERSION_OFFSET);
+        writeFully(channel, sizes, entry.localHeaderOffset + LOCAL_HEADER_CRC_OFFSET);
+        // the extra field is right after the name
+        writeFully(channel, extra, entry.localHeaderOffset + ZipFormat.LOCAL_HEADER_SIZE + entry.rawName.length);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private void writeDataDescriptor(WrittenEntry entry) throws IOException {
+        // like ZipOutputStream, the sizes only take 8 bytes when they don't fit in 4
+        boolean isZip64 = entry.size >= ZipFormat.ZIP64_MAGIC_VALUE || entry.compressedSize >= ZipFormat.ZIP64_MAGIC_VALUE;
+
+        ByteBuffer descriptor = allocate(isZip64 ? 24 : 16);
+        descriptor.putInt(ZipFormat.DATA_DESCRIPTOR_SIGNATURE);
+        descriptor.putInt((int) entry.crc);
+
+        if (isZip64) {
+            descriptor.putLong(entry.compressedSize);
+            descriptor.putLong(entry.size);
+        } else {
+            descriptor.putInt((int) entry.compressedSize);
+            descriptor.putInt((int) entry.size);
+        }
+
+        this.output.write(descriptor.array());
+    }
+
+    private void writeCentralDirectory() throws IOException {
+        long directoryOffset = this.output.getPosition();
+
+        for (WrittenEntry entry : this.entries) {
+            writeCentralHeader(entry);
+        }
+
+        long directorySize = this.output.getPosition() - directoryOffset;
+        long entryCount = this.entries.size();
+
+        boolean isZip64 = entryCount >= ZipFormat.ZIP64_MAGIC_COUNT
+                || directorySize >= ZipFormat.ZIP64_MAGIC_VALUE
+                || directoryOffset >= ZipFormat.ZIP64_MAGIC_VALUE;
+
+        if (isZip64) {
+            long zip64EndOffset = this.output.getPosition();
+
+            ByteBuffer zip64End = allocate(ZipFormat.ZIP64_END_SIZE + ZipFormat.ZIP64_LOCATOR_SIZE);
+            zip64End.putInt(ZipFormat.ZIP64_END_SIGNATURE);
+            // the size of the record, without the signature and this field
+            zip64End.putLong(ZipFormat.ZIP64_END_SIZE - 12);
+            zip64End.putShort((short) ZipFormat.ZIP64_VERSION);
+            zip64End.putShort((short) ZipFormat.ZIP64_VERSION);
+            zip64End.putInt(0);
+            zip64End.putInt(0);
+            zip64End.putLong(entryCount);
+            zip64End.putLong(entryCount);
+            zip64End.putLong(directorySize);
+            zip64End.putLong(directoryOffset);
+
+            zip64End.putInt(ZipFormat.ZIP64_LOCATOR_SIGNATURE);
+            zip64End.putInt(0);
+            zip64End.putLong(zip64EndOffset);
+            zip64End.putInt(1);
+
+            this.output.write(zip64End.array());
+        }
+
+        ByteBuffer end = allocate(ZipFormat.END_SIZE);
+        end.putInt(ZipFormat.END_SIGNATURE);
+        end.putShort((short) 0);
+        end.putShort((short) 0);
+        end.putShort((short) Math.min(entryCount, ZipFormat.ZIP64_MAGIC_COUNT));
+        end.putShort((short) Math.min(entryCount, ZipFormat.ZIP64_MAGIC_COUNT));
+        end.putInt((int) Math.min(directorySize, ZipFormat.ZIP64_MAGIC_VALUE));
+        end.putInt((int) Math.min(directoryOffset, ZipFormat.ZIP64_MAGIC_VALUE));
+        end.putShort((short) 0);
+
+        this.output.write(end.array());
+    }
+
+    private void writeCentralHeader(WrittenEntry entry) throws IOException {
+        // the values that don't fit in 32 bits go in the zip64 extra field, in this order
+        boolean isSizeZip64 = entry.size >= ZipFormat.ZIP64_MAGIC_VALUE;
+        boolean isCompressedSizeZip64 = entry.compressedSize >= ZipFormat.ZIP64_MAGIC_VALUE;
+        boolean isOffsetZip64 = entry.localHeaderOffset >= ZipFormat.ZIP64_MAGIC_VALUE;
+
+        int zip64Length = (isSizeZip64 ? 8 : 0) + (isCompressedSizeZip64 ? 8 : 0) + (isOffsetZip64 ? 8 : 0);
+        // unzip complains about names encoded with UTF-8 when the local
+        // header has an extra field the central header doesn't have
+        int extraLength = ((zip64Length == 0) ? 0 : zip64Length + 4) + (entry.hasPadding ? PADDING_EXTRA_SIZE : 0);
+        // the version needed has to be the same as in the local header
+        int version = (zip64Length == 0 && !entry.hasLocalZip64Extra) ? ZipFormat.VERSION : ZipFormat.ZIP64_VERSION;
+
+        ByteBuffer header = allocate(ZipFormat.CENTRAL_HEADER_SIZE + entry.rawName.length + extraLength);
+        header.putInt(ZipFormat.CENTRAL_HEADER_SIGNATURE);
+        header.putShort((short) version);
+        header.putShort((short) version);
+        header.putShort((short) entry.flags);
+        header.putShort((short) entry.method);
+        header.putInt((int) entry.dosTime);
+        header.putInt((int) entry.crc);
+        header.putInt((int) (isCompressedSizeZip64 ? ZipFormat.ZIP64_MAGIC_VALUE : entry.compressedSize));
+        header.putInt((int) (isSizeZip64 ? ZipFormat.ZIP64_MAGIC_VALUE : entry.size));
+        header.putShort((short) entry.rawName.length);
+        header.putShort((short) extraLength);
+        // comment length, disk number, internal and external attributes
+        header.putShort((short) 0);
+        header.putShort((short) 0);
+        header.putShort((short) 0);
+        header.putInt(0);
+        header.putInt((int) (isOffsetZip64 ? ZipFormat.ZIP64_MAGIC_VALUE : entry.localHeaderOffset));
+        header.put(entry.rawName);
+
+        if (zip64Length != 0) {
+            header.putShort((short) ZipFormat.ZIP64_EXTRA_ID);
+            header.putShort((short) zip64Length);
+
+            if (isSizeZip64) {
+                header.putLong(entry.size);
+            }
+
+            if (isCompressedSizeZip64) {
+                header.putLong(entry.compressedSize);
+            }
+
+            if (isOffsetZip64) {
+                header.putLong(entry.localHeaderOffset);
+            }
+        }
+
+        if (entry.hasPadding) {
+            header.putShort((short) PADDING_EXTRA_ID);
+            header.putShort((short) (PADDING_EXTRA_SIZE - 4));
+            header.putLong(0);
+            header.putLong(0);
+        }
+
+        this.output.write(header.array());
+    }
+
+    private static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Convert a date to the MS-DOS format used by zip files
+     */
+    private static long toDosTime(LocalDateTime time) {
+        // the MS-DOS format can't go before 1980
+        if (time.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+
+        return ((long) (time.getYear() - 1980) << 25)
+                | ((long) time.getMonthValue() << 21)
+                | ((long) time.getDayOfMonth() << 16)
+                | ((long) time.getHour() << 11)
+                | ((long) time.getMinute() << 5)
+                | ((long) time.getSecond() >> 1);
+    }
+
+    /**
+     * How the sizes and the crc of an entry are written in its local header
+     */
+    private enum LocalHeaderSizes {
+
+        /** They are known before the entry's data is written */
+        KNOWN,
+        /** They are written in a data descriptor after the entry's data */
+        IN_DATA_DESCRIPTOR,
+        /** They are written in the local header once the entry's data is written */
+        PATCHED
+    }
+
+    /**
+     * An entry written to the zip file, everything the central directory needs to know about it
+     */
+    private static class WrittenEntry {
+
+        private final String name;
+        private final byte[] rawName;
+
+        private int flags;
+        private int method;
+        private long dosTime;
+        private long crc;
+
+        private long compressedSize;
+        private long size;
+
+        private long localHeaderOffset;
+        private long dataOffset;
+        /** Whether the local header has a zip64 extra field */
+        private boolean hasLocalZip64Extra;
+        /** Whether the local header has a padding extra field, the central header has it too */
+        private boolean hasPadding;
+
+        private WrittenEntry(String name) {
+            this(name, name.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private WrittenEntry(String name, byte[] rawName) {
+            this.name = name;
+            this.rawName = rawName;
+        }
+    }
+
+    /**
+     * Keeps track of the position in the zip file
+     */
+    private static class PositionOutputStream extends FilterOutputStream {
+
+        private long position;
+
+        private PositionOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.out.write(b);
+            this.position++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.out.write(b, off, len);
+            this.position += len;
+        }
+
+        /**
+         * Move the position forward, for data that was written without this stream
+         *
+         * @param length    The length of the data written
+         */
+        private void skip(long length) {
+            this.position += length;
+        }
+
+        private long getPosition() {
+            return this.position;
+        }
+
+        @Override
+        public void close() {
+            // the zip writer closes the file itself
+        }
+    }
+
+    /**
+     * The stream returned by {@link ZipWriter#createEntry(String)}.
+     * It deflates the data of an entry, and computes its crc and its uncompressed size
+     */
+    private interface EntryOutput {
+
+        /**
+         * Write the remaining deflated data, without closing the zip file
+         */
+        void finish() throws IOException;
+
+        /**
+         * Drop the data that hasn't been written, the entry won't be finished
+         */
+        void discard();
+
+        long getCrc();
+
+        long getSize();
+    }
+
+    private static class EntryOutputStream extends DeflaterOutputStream implements EntryOutput {
+
+        private final CRC32 crc;
+        private long size;
+
+        private boolean isFinished = false;
+
+        private EntryOutputStream(OutputStream out, Deflater deflater) {
+            super(out, deflater, OUTPUT_BUFFER_SIZE);
+
+            this.crc = new CRC32();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (this.isFinished) {
+                throw new IOException("The entry has already been closed");
+            }
+
+            super.write(b, off, len);
+
+            this.crc.update(b, off, len);
+            this.size += len;
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (this.isFinished) {
+                return;
+            }
+
+            this.isFinished = true;
+            super.finish();
+        }
+
+        @Override
+        public void close() throws IOException {
+            // closing the stream only finishes the entry's data,
+            // the zip writer ends the entry in closeEntry()
+            finish();
+        }
+
+        @Override
+        public void discard() {
+            // the deflater is ended by the zip writer
+        }
+
+        @Override
+        public long getCrc() {
+            return this.crc.getValue();
+        }
+
+        @Override
+        public long getSize() {
+            return this.size;
+        }
+    }
+
+    private static class StoredEntryOutputStream extends FilterOutputStream implements EntryOutput {
+
+        private final CRC32 crc;
+        private long size;
+
+        private StoredEntryOutputStream(OutputStream out) {
+            super(out);
+
+            this.crc = new CRC32();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.out.write(b);
+
+            this.crc.update(b);
+            this.size++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.out.write(b, off, len);
+
+            this.crc.update(b, off, len);
+            this.size += len;
+        }
+
+        @Override
+        public void finish() {
+            // the data is written as is, there's nothing left to write
+        }
+
+        @Override
+        public void close() {
+            // the zip writer ends the entry in closeEntry()
+        }
+
+        @Override
+        public void discard() {
+            // the data is written as is, nothing is kept
+        }
+
+        @Override
+        public long getCrc() {
+            return this.crc.getValue();
+        }
+
+        @Override
+        public long getSize() {
+            return this.size;
+        }
+    }
+
+    private static class ParallelEntryOutputStream extends ParallelDeflaterOutputStream implements EntryOutput {
+
+        private ParallelEntryOutputStream(OutputStream out, int level) {
+            super(out, level);
+        }
+
+        @Override
+        public void close() throws IOException {
+            // closing the stream only finishes the entry's data,
+            // the zip writer ends the entry in closeEntry()
+            finish();
+        }
     }
 }
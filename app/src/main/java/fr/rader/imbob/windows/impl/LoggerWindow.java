@@ -157,7 +157,7 @@ public class LoggerWindow extends AbstractWindow {
         String callee = Thread.currentThread().getStackTrace()[2].getClassName();
         callee = callee.substring(callee.lastIndexOf('.') + 1);
 
-        instance.log(
+        send(
                 Verbosity.ERROR,
                 callee,
                 message
@@ -173,7 +173,7 @@ public class LoggerWindow extends AbstractWindow {
         String callee = Thread.currentThread().getStackTrace()[2].getClassName();
         callee = callee.substring(callee.lastIndexOf('.') + 1);
 
-        instance.log(
+        send(
                 Verbosity.WARN,
                 callee,
                 message
@@ -189,13 +189,32 @@ public class LoggerWindow extends AbstractWindow {
         String callee = Thread.currentThread().getStackTrace()[2].getClassName();
         callee = callee.substring(callee.lastIndexOf('.') + 1);
 
-        instance.log(
+        send(
                 Verbosity.INFO,
                 callee,
                 message
         );
     }
 
+    /**
+     * Send a log entry to the logger window.
+     * If there is no logger window, like when running without a user interface,
+     * the log entry is only printed to the standard output
+     *
+     * @param verbosity The log entry's verbosity (and color)
+     * @param className The class that called the method
+     * @param message   The log message
+    */
+    private static void send(Verbosity verbosity, String className, String message) {
+        LoggerWindow logger = instance;
+        if (logger == null) {
+            System.out.print(format(verbosity, className, message));
+            return;
+        }
+
+        logger.log(verbosity, className, message);
+    }
+
     /**
      * This just creates a new log item and adds it to the log items list.
      * This method is private because there's no need having this public
@@ -204,13 +223,26 @@ public class LoggerWindow extends AbstractWindow {
      * @param className The class that called the method
      * @param message   The log message
     */
-    private void log(Verbosity verbosity, String className, String message) {
+    private synchronized void log(Verbosity verbosity, String className, String message) {
         if (this.writer == null) {
             return;
         }
 
         this.logItems.add(new LogItem(verbosity, className, message));
 
+        String logEntry = format(verbosity, className, message);
+
+        System.out.print(logEntry);
+
+        try {
+            this.writer.append(logEntry);
+            this.writer.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static String format(Verbosity verbosity, String className, String message) {
         StringBuilder stringBuilder = new StringBuilder();
         stringBuilder.append(DateUtils.getFormattedDate(DATETIME_LOG_PATTERN));
         stringBuilder.append(" ");
@@ -221,14 +253,7 @@ public class LoggerWindow extends AbstractWindow {
         stringBuilder.append(message);
         stringBuilder.append('\n');
 
-        System.out.print(stringBuilder);
-
-        try {
-            this.writer.append(stringBuilder.toString());
-            this.writer.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        return stringBuilder.toString();
     }
 
     private static class Verbosity {
@@ -1,14 +1,17 @@
 package fr.rader.imbob.windows.impl;
 
+import fr.rader.imbob.tasks.ProgressListener;
 import fr.rader.imbob.windows.AbstractWindow;
 import imgui.ImGui;
 import imgui.flag.ImGuiCol;
+import imgui.flag.ImGuiConfigFlags;
 import imgui.flag.ImGuiWindowFlags;
 
-public class ProgressBarWindow extends AbstractWindow {
+public class ProgressBarWindow extends AbstractWindow implements ProgressListener {
 
-    private float progress;
-    private String label;
+    // these are set by the editing threads and read by the render thread
+    private volatile float progress;
+    private volatile String label;
 
     public ProgressBarWindow() {
         this.progress = 0;
@@ -38,6 +41,34 @@ public class ProgressBarWindow extends AbstractWindow {
         ImGui.popStyleColor();
     }
 
+    /**
+     * Lock the user inputs and show the progress bar
+     */
+    @Override
+    public void onStart() {
+        // disable any user inputs
+        ImGui.getIO().setConfigFlags(ImGuiConfigFlags.NavNoCaptureKeyboard | ImGuiConfigFlags.NoMouse);
+
+        // show the progress bar
+        setProgress(0f);
+        setVisible(true);
+    }
+
+    /**
+     * Hide the progress bar and give the user inputs back
+     */
+    @Override
+    public void onFinish() {
+        // reset the progress bar back to 0%
+        setProgress(0f);
+
+        // hide the progress bar at the end of the edit
+        setVisible(false);
+
+        // enable the user inputs we disabled
+        ImGui.getIO().removeConfigFlags(ImGuiConfigFlags.NavNoCaptureKeyboard | ImGuiConfigFlags.NoMouse);
+    }
+
     /**
      * <pre>
      * Set the progress bar's fraction to another value.
@@ -50,6 +81,7 @@ public class ProgressBarWindow extends AbstractWindow {
      *
      * @param progress  The new progress bar's fraction
      */
+    @Override
     public void setProgress(float progress) {
         this.progress = progress;
     }
@@ -60,6 +92,7 @@ public class ProgressBarWindow extends AbstractWindow {
      *
      * @param label     The new progress bar's label
      */
+    @Override
     public void setLabel(String label) {
         this.label = label;
     }
@@ -1,10 +1,8 @@
 package fr.rader.imbob.windows.impl;
 
 import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import fr.rader.imbob.tasks.TaskExecutor;
@@ -113,9 +111,9 @@ public class ReplayListWindow extends AbstractWindow {
         // if we click on the Edit Selected button and
         // have at least one replay in the replay list
         if (ImGui.button("Edit Selected")) {
-            // then we move the selected replay to
-            // the imbob folder and we edit it
-            moveAndEditReplays(this.replays.get(this.selectedReplay.get()));
+            // then we edit the selected replay
+            // to the imbob folder
+            editReplays(this.replays.get(this.selectedReplay.get()));
         }
 
         ImGui.endDisabled();
@@ -126,51 +124,32 @@ public class ReplayListWindow extends AbstractWindow {
         // if we click on the Edit All button and
         // have at least one replay in the replay list
         if (ImGui.button("Edit All") && !this.replays.isEmpty()) {
-            // then we move the replays to
-            // the imbob folder and we edit them
-            moveAndEditReplays(this.replays.toArray(new File[0]));
+            // then we edit the replays
+            // to the imbob folder
+            editReplays(this.replays.toArray(new File[0]));
         }
 
         ImGui.endDisabled();
     }
 
     /**
-     * Move the replays given as the first parameter to
-     * the {@link OS#getImBobFolder()} folder and edit them.
+     * Edit the replays given as the first parameter. The original replays are only read,
+     * the edited replays are written to the {@link OS#getImBobFolder()} folder.
      * This will apply all the tasks contained in the {@link TaskListWindow}'s task list
      *
      * @param replays   The list of replays to edit.
      */
-    private void moveAndEditReplays(File... replays) {
-        // we create a list of file, this will be the replays
-        // to edit in the imbob folder
-        List<File> replaysToEdit = new ArrayList<>();
-
-        // we loop through each replay so we can move them
-        for (File replay : replays) {
-            // we create the file in the imbob folder
-            File replayCopy = new File(OS.getImBobFolder() + replay.getName());
-
-            try {
-                // we copy the replay file to the imbob folder
-                Files.copy(
-                        replay.toPath(),
-                        replayCopy.toPath(),
-                        StandardCopyOption.REPLACE_EXISTING
-                );
-
-                // and we add the file from the imbob folder to
-                // the replaysToEdit list so we can edit those and not the original replays
-                replaysToEdit.add(replayCopy);
-            } catch (IOException e) {
-                LoggerWindow.error(e.getMessage());
-            }
-        }
+    private void editReplays(File... replays) {
+        // we create a new instance of the task executor,
+        // this will take the tasks to execute, the replays to edit,
+        // the folder to write the edited replays to and the progress bar as the constructor's parameter
+        TaskExecutor executor = new TaskExecutor(
+                this.taskListWindow.getTasks(),
+                Arrays.asList(replays),
+                new File(OS.getImBobFolder()),
+                this.progressBar
+        );
 
-        // we then create a new instance of the task executor,
-        // this will take the tasks to execute, the replays to edit
-        // and the progress bar as the constructor's parameter
-        TaskExecutor executor = new TaskExecutor(this.taskListWindow.getTasks(), replaysToEdit, this.progressBar);
         // finally, we can apply all the task edits to the replays
         executor.applyAllTaskEdits();
     }
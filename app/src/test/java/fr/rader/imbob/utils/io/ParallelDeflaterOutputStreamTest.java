@@ -0,0 +1,148 @@
+package fr.rader.imbob.utils.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ParallelDeflaterOutputStreamTest {
+
+    @Test
+    public void emptyInput() throws Exception {
+        assertRoundTrip(new byte[0]);
+    }
+
+    @Test
+    public void singleByte() throws Exception {
+        assertRoundTrip(new byte[] { 42 });
+    }
+
+    @Test
+    public void exactlyOneBlock() throws Exception {
+        assertRoundTrip(compressibleBytes(ParallelDeflaterOutputStream.BLOCK_SIZE, 1));
+    }
+
+    @Test
+    public void severalBlocks() throws Exception {
+        assertRoundTrip(compressibleBytes(ParallelDeflaterOutputStream.BLOCK_SIZE * 5 + 1234, 2));
+    }
+
+    @Test
+    public void severalBlocksOfRandomBytes() throws Exception {
+        // random bytes don't compress, the deflated blocks are bigger than their input
+        byte[] data = new byte[ParallelDeflaterOutputStream.BLOCK_SIZE * 3 + 7];
+        new Random(3).nextBytes(data);
+
+        assertRoundTrip(data);
+    }
+
+    @Test(timeout = 60000)
+    public void moreStreamsThanBlocksInFlight() throws Exception {
+        int streamCount = ParallelDeflaterOutputStream.MAX_BLOCKS_IN_FLIGHT * 2;
+
+        // each stream has its own thread, like the replays edited at the same time
+        ExecutorService executor = Executors.newFixedThreadPool(streamCount);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < streamCount; i++) {
+                byte[] data = compressibleBytes(ParallelDeflaterOutputStream.BLOCK_SIZE * 4 + i, i);
+                results.add(executor.submit(() -> {
+                    assertRoundTrip(data);
+                    return null;
+                }));
+            }
+
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void discardGivesTheBlocksBack() throws Exception {
+        // this stream takes all the blocks in flight, and is never finished
+        ParallelDeflaterOutputStream discarded = new ParallelDeflaterOutputStream(new ByteArrayOutputStream(), Deflater.DEFAULT_COMPRESSION);
+        discarded.write(compressibleBytes(ParallelDeflaterOutputStream.BLOCK_SIZE * ParallelDeflaterOutputStream.MAX_BLOCKS_IN_FLIGHT, 4));
+        discarded.discard();
+
+        // it would wait forever if the discarded stream still had the blocks
+        assertRoundTrip(compressibleBytes(ParallelDeflaterOutputStream.BLOCK_SIZE * 2, 5));
+    }
+
+    /**
+     * Deflate the data with a {@link ParallelDeflaterOutputStream}, check its crc and its size,
+     * and check the deflated data inflates back to the data
+     */
+    private static void assertRoundTrip(byte[] data) throws IOException, DataFormatException {
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+
+        ParallelDeflaterOutputStream output = new ParallelDeflaterOutputStream(deflated, Deflater.DEFAULT_COMPRESSION);
+        // the data is written in uneven pieces, so they don't line up with the blocks
+        for (int offset = 0; offset < data.length; offset += 50000) {
+            output.write(data, offset, Math.min(50000, data.length - offset));
+        }
+
+        output.finish();
+
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+
+        assertEquals(crc.getValue(), output.getCrc());
+        assertEquals(data.length, output.getSize());
+        assertArrayEquals(data, inflate(deflated.toByteArray(), data.length));
+    }
+
+    private static byte[] inflate(byte[] deflated, int length) throws DataFormatException {
+        // zip entries are raw deflate data, without zlib header
+        Inflater inflater = new Inflater(true);
+        inflater.setInput(deflated);
+
+        // one more byte than expected, so there's always room to find out the stream is too long
+        byte[] inflated = new byte[length + 1];
+        int inflatedLength = 0;
+        while (!inflater.finished()) {
+            int read = inflater.inflate(inflated, inflatedLength, inflated.length - inflatedLength);
+            inflatedLength += read;
+
+            if (read == 0 && !inflater.finished()) {
+                throw new DataFormatException("The deflate stream doesn't end with the data");
+            }
+        }
+
+        // the deflate stream ends with the data, nothing comes after it
+        assertEquals(0, inflater.getRemaining());
+        inflater.end();
+
+        return Arrays.copyOf(inflated, inflatedLength);
+    }
+
+    /**
+     * Random bytes from a small alphabet, so they compress like a recording does
+     */
+    private static byte[] compressibleBytes(int length, long seed) {
+        Random random = new Random(seed);
+
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) random.nextInt(16);
+        }
+
+        return bytes;
+    }
+}
@@ -0,0 +1,477 @@
+package fr.rader.imbob.utils.zip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Writes zip files with {@link ZipWriter} and {@link ZipReader}, and reads them back
+ * with both {@link ZipFile}, which reads the central directory, and {@link ZipInputStream},
+ * which only reads the local headers
+ */
+public class ZipWriterTest {
+
+    private static final long FOUR_GIB = 0x100000000L;
+    /** The time of the entries of the source zips, the entries copied as is keep it */
+    private static final long SOURCE_TIME = 1577880000000L;
+
+    private File folder;
+
+    @Before
+    public void createFolder() throws IOException {
+        this.folder = Files.createTempDirectory("imbob-zip").toFile();
+    }
+
+    @After
+    public void deleteFolder() throws IOException {
+        FileUtils.deleteDirectory(this.folder);
+    }
+
+    @Test
+    public void storedEntriesHavePatchedLocalHeaders() throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("metaData.json", "{\"protocol\":763}".getBytes(StandardCharsets.UTF_8));
+        entries.put("recording.tmcpr", randomBytes(300000, 1));
+        entries.put("empty", new byte[0]);
+        entries.put("r\u00e9plique.txt", "UTF-8 name".getBytes(StandardCharsets.UTF_8));
+
+        File zip = new File(this.folder, "stored.mcpr");
+        try (ZipWriter writer = new ZipWriter(zip)) {
+            writer.setCompressionPolicy(CompressionPolicy.STORE);
+
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                writer.createEntry(entry.getKey()).write(entry.getValue());
+                writer.closeEntry();
+            }
+
+            writer.close();
+            writer.move();
+        }
+
+        assertEntries(entries, zip);
+
+        try (ZipFile zipFile = new ZipFile(zip)) {
+            for (String name : entries.keySet()) {
+                assertEquals(name, ZipEntry.STORED, zipFile.getEntry(name).getMethod());
+            }
+        }
+
+        // stored entries can't have a data descriptor, the local headers have the sizes and the crc
+        try (ZipInputStream input = new ZipInputStream(new FileInputStream(zip))) {
+            for (Map.Entry<String, byte[]> expected : entries.entrySet()) {
+                ZipEntry entry = input.getNextEntry();
+
+                assertEquals(expected.getValue().length, entry.getSize());
+                assertEquals(crc(expected.getValue()), entry.getCrc());
+            }
+        }
+    }
+
+    @Test
+    public void deflatedEntriesHaveDataDescriptors() throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("metaData.json", "{\"protocol\":763}".getBytes(StandardCharsets.UTF_8));
+        entries.put("recording.tmcpr", compressibleBytes(1000000, 2));
+        entries.put("empty", new byte[0]);
+
+        File zip = new File(this.folder, "deflated.mcpr");
+        try (ZipWriter writer = new ZipWriter(zip)) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                // the recording is deflated on multiple threads, like TaskExecutor does
+                writer.setParallelCompression(entry.getKey().equals("recording.tmcpr"));
+
+                writer.createEntry(entry.getKey()).write(entry.getValue());
+                writer.closeEntry();
+            }
+
+            writer.close();
+            writer.move();
+        }
+
+        assertEntries(entries, zip);
+
+        try (ZipFile zipFile = new ZipFile(zip)) {
+            for (String name : entries.keySet()) {
+                assertEquals(name, ZipEntry.DEFLATED, zipFile.getEntry(name).getMethod());
+            }
+        }
+
+        // the sizes are only known once the data descriptor after the data is read
+        try (ZipInputStream input = new ZipInputStream(new FileInputStream(zip))) {
+            for (int i = 0; i < entries.size(); i++) {
+                assertEquals(-1, input.getNextEntry().getSize());
+            }
+        }
+    }
+
+    @Test
+    public void rawCopyDropsTheDataDescriptors() throws IOException {
+        Map<String, byte[]> sourceEntries = new LinkedHashMap<>();
+        sourceEntries.put("metaData.json", "{\"protocol\":763}".getBytes(StandardCharsets.UTF_8));
+        sourceEntries.put("recording.tmcpr", compressibleBytes(200000, 3));
+        sourceEntries.put("markers.json", compressibleBytes(50000, 4));
+        sourceEntries.put("thumb", randomBytes(20000, 5));
+
+        // ZipOutputStream writes the deflated entries with a data descriptor
+        File source = new File(this.folder, "source.mcpr");
+        writeWithZipOutputStream(source, sourceEntries, null);
+
+        byte[] recording = compressibleBytes(100000, 6);
+
+        File zip = new File(this.folder, "copy.mcpr");
+        try (ZipReader reader = new ZipReader(source); ZipWriter writer = new ZipWriter(zip)) {
+            writer.createEntry("recording.tmcpr", ZipEntry.DEFLATED).write(recording);
+            writer.closeEntry();
+
+            reader.dumpToZipWriter(writer, true);
+
+            writer.close();
+            writer.move();
+        }
+
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("recording.tmcpr", recording);
+        entries.put("metaData.json", sourceEntries.get("metaData.json"));
+        entries.put("markers.json", sourceEntries.get("markers.json"));
+        entries.put("thumb", sourceEntries.get("thumb"));
+
+        assertEntries(entries, zip);
+
+        // the copied entries keep their time, they aren't deflated again
+        try (ZipFile zipFile = new ZipFile(zip)) {
+            assertEquals(SOURCE_TIME, zipFile.getEntry("markers.json").getTime());
+        }
+
+        // the sizes of the copied entries are known, so they're in the local headers
+        try (ZipInputStream input = new ZipInputStream(new FileInputStream(zip))) {
+            assertEquals(-1, input.getNextEntry().getSize());
+
+            for (int i = 1; i < entries.size(); i++) {
+                ZipEntry entry = input.getNextEntry();
+                assertEquals(entry.getName(), entries.get(entry.getName()).length, entry.getSize());
+            }
+        }
+    }
+
+    @Test
+    public void endOfCentralDirectoryWithComment() throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("metaData.json", "{\"protocol\":763}".getBytes(StandardCharsets.UTF_8));
+        entries.put("recording.tmcpr", compressibleBytes(100000, 7));
+
+        // the comment has the signature of the end of central directory in it
+        File source = new File(this.folder, "comment.mcpr");
+        writeWithZipOutputStream(source, entries, "made by a tool PK\u0005\u0006 that likes comments");
+
+        File zip = new File(this.folder, "copy.mcpr");
+        try (ZipReader reader = new ZipReader(source); ZipWriter writer = new ZipWriter(zip)) {
+            reader.dumpToZipWriter(writer, true);
+
+            writer.close();
+            writer.move();
+        }
+
+        assertEntries(entries, zip);
+
+        try (ZipFile zipFile = new ZipFile(zip)) {
+            // the entries have been copied as is, and not deflated again after the raw copy failed
+            assertEquals(SOURCE_TIME, zipFile.getEntry("recording.tmcpr").getTime());
+            assertNull(zipFile.getComment());
+        }
+    }
+
+    @Test
+    public void zip64OffsetsAndSizes() throws IOException {
+        byte[] small = "after four gigabytes".getBytes(StandardCharsets.UTF_8);
+        byte[] hugeData = deflate("not really five gigabytes".getBytes(StandardCharsets.UTF_8));
+        long hugeSize = 5 * 1024L * 1024L * 1024L;
+
+        // the entries are after a hole of more than 4 GiB, it doesn't take any room on disk
+        File source = new File(this.folder, "zip64.mcpr");
+        writeZip64Source(source, small, hugeData, hugeSize);
+
+        File zip = new File(this.folder, "copy.mcpr");
+        try (ZipReader reader = new ZipReader(source); ZipWriter writer = new ZipWriter(zip)) {
+            reader.dumpToZipWriter(writer, true);
+
+            writer.close();
+            writer.move();
+        }
+
+        try (ZipFile zipFile = new ZipFile(zip)) {
+            assertArrayEquals(small, read(zipFile.getInputStream(zipFile.getEntry("small.txt"))));
+
+            // the size is made up, so only the headers are checked
+            ZipEntry huge = zipFile.getEntry("huge.bin");
+            assertEquals(hugeSize, huge.getSize());
+            assertEquals(hugeData.length, huge.getCompressedSize());
+        }
+
+        try (ZipInputStream input = new ZipInputStream(new FileInputStream(zip))) {
+            assertEquals("small.txt", input.getNextEntry().getName());
+            assertArrayEquals(small, read(input));
+
+            ZipEntry huge = input.getNextEntry();
+            assertEquals("huge.bin", huge.getName());
+            assertEquals(hugeSize, huge.getSize());
+            assertEquals(hugeData.length, huge.getCompressedSize());
+        }
+    }
+
+    /**
+     * Check that both {@link ZipFile} and {@link ZipInputStream} read the expected entries, in order
+     */
+    private static void assertEntries(Map<String, byte[]> expected, File zip) throws IOException {
+        Map<String, byte[]> zipFileEntries = new LinkedHashMap<>();
+        try (ZipFile zipFile = new ZipFile(zip)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                zipFileEntries.put(entry.getName(), read(zipFile.getInputStream(entry)));
+            }
+        }
+
+        Map<String, byte[]> inputStreamEntries = new LinkedHashMap<>();
+        try (ZipInputStream input = new ZipInputStream(new FileInputStream(zip))) {
+            ZipEntry entry;
+            while ((entry = input.getNextEntry()) != null) {
+                inputStreamEntries.put(entry.getName(), read(input));
+            }
+        }
+
+        assertEquals(expected.keySet().toString(), zipFileEntries.keySet().toString());
+        assertEquals(expected.keySet().toString(), inputStreamEntries.keySet().toString());
+
+        for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+            assertArrayEquals(entry.getKey(), entry.getValue(), zipFileEntries.get(entry.getKey()));
+            assertArrayEquals(entry.getKey(), entry.getValue(), inputStreamEntries.get(entry.getKey()));
+        }
+    }
+
+    private static void writeWithZipOutputStream(File zip, Map<String, byte[]> entries, String comment) throws IOException {
+        try (ZipOutputStream output = new ZipOutputStream(new FileOutputStream(zip))) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                ZipEntry zipEntry = new ZipEntry(entry.getKey());
+                zipEntry.setTime(SOURCE_TIME);
+
+                output.putNextEntry(zipEntry);
+                output.write(entry.getValue());
+                output.closeEntry();
+            }
+
+            if (comment != null) {
+                output.setComment(comment);
+            }
+        }
+    }
+
+    /**
+     * Write a zip whose entries start after 4 GiB, so the central directory needs zip64 offsets.
+     * The second entry claims to be bigger than 4 GiB, its sizes are in zip64 extra fields too
+     */
+    private static void writeZip64Source(File zip, byte[] small, byte[] hugeData, long hugeSize) throws IOException {
+        byte[] smallName = "small.txt".getBytes(StandardCharsets.UTF_8);
+        byte[] hugeName = "huge.bin".getBytes(StandardCharsets.UTF_8);
+        long hugeCrc = 0x12345678L;
+
+        long smallOffset = FOUR_GIB + 16;
+
+        ByteBuffer data = allocate(1024);
+        data.putInt(ZipFormat.LOCAL_HEADER_SIGNATURE);
+        data.putShort((short) ZipFormat.VERSION);
+        data.putShort((short) ZipFormat.FLAG_UTF8);
+        data.putShort((short) ZipFormat.METHOD_STORED);
+        data.putInt(0);
+        data.putInt((int) crc(small));
+        data.putInt(small.length);
+        data.putInt(small.length);
+        data.putShort((short) smallName.length);
+        data.putShort((short) 0);
+        data.put(smallName);
+        data.put(small);
+
+        long hugeOffset = smallOffset + data.position();
+
+        data.putInt(ZipFormat.LOCAL_HEADER_SIGNATURE);
+        data.putShort((short) ZipFormat.ZIP64_VERSION);
+        data.putShort((short) ZipFormat.FLAG_UTF8);
+        data.putShort((short) ZipFormat.METHOD_DEFLATED);
+        data.putInt(0);
+        data.putInt((int) hugeCrc);
+        data.putInt((int) ZipFormat.ZIP64_MAGIC_VALUE);
+        data.putInt((int) ZipFormat.ZIP64_MAGIC_VALUE);
+        data.putShort((short) hugeName.length);
+        data.putShort((short) 20);
+        data.put(hugeName);
+        data.putShort((short) ZipFormat.ZIP64_EXTRA_ID);
+        data.putShort((short) 16);
+        data.putLong(hugeSize);
+        data.putLong(hugeData.length);
+        data.put(hugeData);
+
+        long directoryOffset = smallOffset + data.position();
+
+        data.putInt(ZipFormat.CENTRAL_HEADER_SIGNATURE);
+        data.putShort((short) ZipFormat.ZIP64_VERSION);
+        data.putShort((short) ZipFormat.ZIP64_VERSION);
+        data.putShort((short) ZipFormat.FLAG_UTF8);
+        data.putShort((short) ZipFormat.METHOD_STORED);
+        data.putInt(0);
+        data.putInt((int) crc(small));
+        data.putInt(small.length);
+        data.putInt(small.length);
+        data.putShort((short) smallName.length);
+        data.putShort((short) 12);
+        data.putShort((short) 0);
+        data.putShort((short) 0);
+        data.putShort((short) 0);
+        data.putInt(0);
+        data.putInt((int) ZipFormat.ZIP64_MAGIC_VALUE);
+        data.put(smallName);
+        data.putShort((short) ZipFormat.ZIP64_EXTRA_ID);
+        data.putShort((short) 8);
+        data.putLong(smallOffset);
+
+        data.putInt(ZipFormat.CENTRAL_HEADER_SIGNATURE);
+        data.putShort((short) ZipFormat.ZIP64_VERSION);
+        data.putShort((short) ZipFormat.ZIP64_VERSION);
+        data.putShort((short) ZipFormat.FLAG_UTF8);
+        data.putShort((short) ZipFormat.METHOD_DEFLATED);
+        data.putInt(0);
+        data.putInt((int) hugeCrc);
+        data.putInt(hugeData.length);
+        data.putInt((int) ZipFormat.ZIP64_MAGIC_VALUE);
+        data.putShort((short) hugeName.length);
+        data.putShort((short) 20);
+        data.putShort((short) 0);
+        data.putShort((short) 0);
+        data.putShort((short) 0);
+        data.putInt(0);
+        data.putInt((int) ZipFormat.ZIP64_MAGIC_VALUE);
+        data.put(hugeName);
+        // the size comes before the offset in the zip64 extra field
+        data.putShort((short) ZipFormat.ZIP64_EXTRA_ID);
+        data.putShort((short) 16);
+        data.putLong(hugeSize);
+        data.putLong(hugeOffset);
+
+        long zip64EndOffset = smallOffset + data.position();
+        long directorySize = zip64EndOffset - directoryOffset;
+
+        data.putInt(ZipFormat.ZIP64_END_SIGNATURE);
+        data.putLong(ZipFormat.ZIP64_END_SIZE - 12);
+        data.putShort((short) ZipFormat.ZIP64_VERSION);
+        data.putShort((short) ZipFormat.ZIP64_VERSION);
+        data.putInt(0);
+        data.putInt(0);
+        data.putLong(2);
+        data.putLong(2);
+        data.putLong(directorySize);
+        data.putLong(directoryOffset);
+
+        data.putInt(ZipFormat.ZIP64_LOCATOR_SIGNATURE);
+        data.putInt(0);
+        data.putLong(zip64EndOffset);
+        data.putInt(1);
+
+        data.putInt(ZipFormat.END_SIGNATURE);
+        data.putShort((short) 0);
+        data.putShort((short) 0);
+        data.putShort((short) 2);
+        data.putShort((short) 2);
+        data.putInt((int) directorySize);
+        data.putInt((int) ZipFormat.ZIP64_MAGIC_VALUE);
+        data.putShort((short) 0);
+
+        try (RandomAccessFile file = new RandomAccessFile(zip, "rw")) {
+            file.seek(smallOffset);
+            file.write(data.array(), 0, data.position());
+        }
+    }
+
+    private static byte[] read(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+
+        int length;
+        while ((length = input.read(buffer)) != -1) {
+            output.write(buffer, 0, length);
+        }
+
+        return output.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data);
+        deflater.finish();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            output.write(buffer, 0, deflater.deflate(buffer));
+        }
+
+        deflater.end();
+        return output.toByteArray();
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+
+        return crc.getValue();
+    }
+
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+
+        return bytes;
+    }
+
+    /**
+     * Random bytes from a small alphabet, so they compress like a recording does
+     */
+    private static byte[] compressibleBytes(int length, long seed) {
+        Random random = new Random(seed);
+
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) random.nextInt(16);
+        }
+
+        return bytes;
+    }
+
+    private static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}